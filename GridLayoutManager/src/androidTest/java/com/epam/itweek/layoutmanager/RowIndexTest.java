@@ -0,0 +1,161 @@
+package com.epam.itweek.layoutmanager;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class RowIndexTest extends TestCase {
+
+    private static final int SPAN_COUNT = 3;
+
+    private final List<Integer> spans = new ArrayList<Integer>();
+
+    private RowIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        index = new RowIndex(SPAN_COUNT);
+        index.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return spans.get(position);
+            }
+        });
+    }
+
+    public void testPacksRows() {
+        setSpans(1, 1, 1, 2, 1, 3, 2, 2);
+        assertRows(0, 3, 5, 6, 7);
+        assertEquals(2, index.getColumn(4));
+        assertEquals(2, index.getSpanSize(3));
+        assertEquals(4, index.getLastPositionInRow(1));
+    }
+
+    public void testInsertRepacksFollowingRows() {
+        setSpans(1, 1, 1, 1, 1, 1);
+        spans.add(1, 2);
+        index.onItemsInserted(1, 1);
+        index.resolve(spans.size());
+        assertRows(0, 2, 5);
+    }
+
+    public void testInsertAtRowStartRepacksPreviousRow() {
+        setSpans(2, 2);
+        spans.add(1, 1);
+        index.onItemsInserted(1, 1);
+        index.resolve(spans.size());
+        assertRows(0, 2);
+    }
+
+    public void testRemoveRepacksFollowingRows() {
+        setSpans(1, 2, 2, 1, 3);
+        spans.remove(1);
+        index.onItemsRemoved(1, 1);
+        index.resolve(spans.size());
+        assertRows(0, 2, 3);
+    }
+
+    public void testRemoveAtRowStartRepacksPreviousRow() {
+        setSpans(1, 3, 1, 1);
+        spans.remove(1);
+        index.onItemsRemoved(1, 1);
+        index.resolve(spans.size());
+        assertRows(0);
+    }
+
+    public void testUpdateAtRowStartRepacksPreviousRow() {
+        setSpans(2, 2);
+        spans.set(1, 1);
+        index.onItemsUpdated(1, 1);
+        index.resolve(spans.size());
+        assertRows(0);
+    }
+
+    public void testUpdateSplitsRow() {
+        setSpans(1, 1, 1);
+        spans.set(1, 3);
+        index.onItemsUpdated(1, 1);
+        index.resolve(spans.size());
+        assertRows(0, 1, 2);
+    }
+
+    public void testIncrementalChangesMatchRebuild() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 30; i++) {
+            spans.add(1 + random.nextInt(SPAN_COUNT));
+        }
+        index.resolve(spans.size());
+        for (int step = 0; step < 500; step++) {
+            final int operation = random.nextInt(3);
+            if (operation == 0 || spans.isEmpty()) {
+                final int start = random.nextInt(spans.size() + 1);
+                final int count = 1 + random.nextInt(3);
+                for (int i = 0; i < count; i++) {
+                    spans.add(start, 1 + random.nextInt(SPAN_COUNT));
+                }
+                index.onItemsInserted(start, count);
+            } else if (operation == 1) {
+                final int start = random.nextInt(spans.size());
+                final int count = 1 + random.nextInt(Math.min(3, spans.size() - start));
+                for (int i = 0; i < count; i++) {
+                    spans.remove(start);
+                }
+                index.onItemsRemoved(start, count);
+            } else {
+                final int start = random.nextInt(spans.size());
+                final int count = 1 + random.nextInt(Math.min(3, spans.size() - start));
+                for (int i = start; i < start + count; i++) {
+                    spans.set(i, 1 + random.nextInt(SPAN_COUNT));
+                }
+                index.onItemsUpdated(start, count);
+            }
+            index.resolve(spans.size());
+            assertEquals("step " + step, packRows(), rows());
+        }
+    }
+
+    private void setSpans(Integer... values) {
+        spans.clear();
+        for (Integer value : values) {
+            spans.add(value);
+        }
+        index.invalidate();
+        index.resolve(spans.size());
+    }
+
+    private void assertRows(int... expectedStarts) {
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int start : expectedStarts) {
+            expected.add(start);
+        }
+        assertEquals(expected, rows());
+        assertEquals(packRows(), rows());
+    }
+
+    private List<Integer> rows() {
+        final List<Integer> rows = new ArrayList<Integer>();
+        for (int row = 0; row < index.getRowCount(); row++) {
+            rows.add(index.getFirstPositionInRow(row));
+        }
+        return rows;
+    }
+
+    /**
+     * @return first positions of rows packed from scratch
+     */
+    private List<Integer> packRows() {
+        final List<Integer> rows = new ArrayList<Integer>();
+        int column = SPAN_COUNT;
+        for (int position = 0; position < spans.size(); position++) {
+            if (column + spans.get(position) > SPAN_COUNT) {
+                rows.add(position);
+                column = 0;
+            }
+            column += spans.get(position);
+        }
+        return rows;
+    }
+}
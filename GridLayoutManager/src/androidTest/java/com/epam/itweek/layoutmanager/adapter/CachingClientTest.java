@@ -0,0 +1,277 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.client.UrlConnectionClient;
+
+public class CachingClientTest extends TestCase {
+
+    private static final String ETAG = "\"v1\"";
+
+    private static final String BODY = "{\"photos\":[]}";
+
+    private File directory;
+
+    private StandInServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("caching-client", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        server = new StandInServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testStoredResponseIsRevalidated() throws Exception {
+        CachingClient client = new CachingClient(new UrlConnectionClient(), directory, 1024 * 1024);
+
+        Response first = client.execute(get(server.getUrl()));
+        assertEquals(200, first.getStatus());
+        assertEquals(BODY, readBody(first));
+
+        Response second = client.execute(get(server.getUrl()));
+        assertEquals(200, second.getStatus());
+        assertEquals(BODY, readBody(second));
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, server.getNotModifiedCount());
+    }
+
+    public void testConcurrentRequestsShareOneRequest() throws Exception {
+        CachingClient client = new CachingClient(new UrlConnectionClient(), directory, 1024 * 1024);
+        server.holdResponses();
+
+        Caller owner = new Caller(client, server.getUrl());
+        owner.start();
+        assertTrue(server.awaitRequest());
+        Caller waiter = new Caller(client, server.getUrl());
+        waiter.start();
+        // let the second caller reach the shared request
+        Thread.sleep(200);
+        server.releaseResponses();
+        owner.join();
+        waiter.join();
+
+        assertEquals(BODY, readBody(owner.response));
+        assertEquals(BODY, readBody(waiter.response));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    public void testRuntimeExceptionReachesWaiters() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Client failing = new Client() {
+            @Override
+            public Response execute(Request request) throws IOException {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("interrupted");
+                }
+                throw new IllegalStateException("converter blew up");
+            }
+        };
+        CachingClient client = new CachingClient(failing, directory, 1024 * 1024);
+
+        Caller owner = new Caller(client, server.getUrl());
+        owner.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Caller waiter = new Caller(client, server.getUrl());
+        waiter.start();
+        Thread.sleep(200);
+        release.countDown();
+        owner.join();
+        waiter.join();
+
+        assertTrue(owner.failure instanceof IllegalStateException);
+        assertTrue(String.valueOf(waiter.failure), waiter.failure instanceof RuntimeException);
+        assertTrue(waiter.failure == owner.failure || waiter.failure.getCause() == owner.failure);
+        assertNull(waiter.response);
+    }
+
+    private static Request get(String url) {
+        return new Request("GET", url, Collections.<Header>emptyList(), null);
+    }
+
+    private static String readBody(Response response) throws IOException {
+        InputStream in = response.getBody().in();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class Caller extends Thread {
+
+        private final Client client;
+
+        private final String url;
+
+        volatile Response response;
+
+        volatile Throwable failure;
+
+        Caller(Client client, String url) {
+            this.client = client;
+            this.url = url;
+        }
+
+        @Override
+        public void run() {
+            try {
+                response = client.execute(get(url));
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Serves one feed with an ETag, answering 304 to requests that already have it.
+     */
+    private static class StandInServer implements Runnable {
+
+        private final ServerSocket socket;
+
+        private final AtomicInteger requestCount = new AtomicInteger();
+
+        private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+        private final CountDownLatch requestReceived = new CountDownLatch(1);
+
+        private volatile CountDownLatch responsesReleased = new CountDownLatch(0);
+
+        private Thread thread;
+
+        StandInServer() throws IOException {
+            socket = new ServerSocket(0);
+        }
+
+        void start() {
+            thread = new Thread(this, "StandInServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws Exception {
+            socket.close();
+            thread.join();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/photos";
+        }
+
+        int getRequestCount() {
+            return requestCount.get();
+        }
+
+        int getNotModifiedCount() {
+            return notModifiedCount.get();
+        }
+
+        void holdResponses() {
+            responsesReleased = new CountDownLatch(1);
+        }
+
+        void releaseResponses() {
+            responsesReleased.countDown();
+        }
+
+        boolean awaitRequest() throws InterruptedException {
+            return requestReceived.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    serve(socket.accept());
+                } catch (IOException ignored) {
+                    // closed
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket connection) throws IOException, InterruptedException {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+                List<String> lines = new ArrayList<String>();
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    lines.add(line);
+                }
+                requestCount.incrementAndGet();
+                requestReceived.countDown();
+                responsesReleased.await();
+
+                boolean notModified = false;
+                for (String header : lines) {
+                    if (header.toLowerCase().startsWith("if-none-match:")
+                            && header.substring(header.indexOf(':') + 1).trim().equals(ETAG)) {
+                        notModified = true;
+                    }
+                }
+                OutputStream out = connection.getOutputStream();
+                if (notModified) {
+                    notModifiedCount.incrementAndGet();
+                    out.write(("HTTP/1.1 304 Not Modified\r\nETag: " + ETAG + "\r\nConnection: close\r\n\r\n")
+                            .getBytes("UTF-8"));
+                } else {
+                    byte[] body = BODY.getBytes("UTF-8");
+                    out.write(("HTTP/1.1 200 OK\r\nETag: " + ETAG + "\r\nContent-Type: application/json\r\n"
+                            + "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+                    out.write(body);
+                }
+                out.flush();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
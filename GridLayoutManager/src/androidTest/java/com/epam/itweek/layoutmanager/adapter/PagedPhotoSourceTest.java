@@ -0,0 +1,216 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+
+public class PagedPhotoSourceTest extends TestCase {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int PREFETCH_DISTANCE = 3;
+
+    private final FakeService service = new FakeService();
+
+    private final List<String> events = new ArrayList<String>();
+
+    private PagedPhotoSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        source = new PagedPhotoSource(service, PAGE_SIZE);
+        source.setPrefetchDistance(PREFETCH_DISTANCE);
+        source.setListener(new PagedPhotoSource.Listener() {
+            @Override
+            public void onPhotosInserted(int positionStart, int itemCount) {
+                events.add("inserted " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onPhotosChanged(int positionStart, int itemCount) {
+                events.add("changed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onPhotosRemoved(int positionStart, int itemCount) {
+                events.add("removed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onPhotoMoved(int fromPosition, int toPosition) {
+                events.add("moved " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onPageFailed(int page, RetrofitError error) {
+                events.add("failed " + page);
+            }
+        });
+    }
+
+    public void testStartLoadsFirstPage() {
+        source.start();
+        assertEquals(Collections.singletonList(1), service.pendingPages());
+
+        service.respond(1, PAGE_SIZE);
+        assertEquals(PAGE_SIZE, source.getPhotos().size());
+        assertEquals(Collections.singletonList("inserted 0 " + PAGE_SIZE), events);
+        assertEquals(photoId(1, 0), source.getPhotos().getId(0));
+    }
+
+    public void testNextPageIsRequestedAtThreshold() {
+        loadPages(1);
+
+        source.onVisibleRangeChanged(0, PAGE_SIZE - PREFETCH_DISTANCE - 1);
+        assertTrue(service.pendingPages().isEmpty());
+
+        source.onVisibleRangeChanged(0, PAGE_SIZE - PREFETCH_DISTANCE);
+        assertEquals(Collections.singletonList(2), service.pendingPages());
+
+        service.respond(2, PAGE_SIZE);
+        assertEquals(2 * PAGE_SIZE, source.getPhotos().size());
+        assertEquals("inserted " + PAGE_SIZE + " " + PAGE_SIZE, events.get(events.size() - 1));
+    }
+
+    public void testPageBeingLoadedIsNotRequestedAgain() {
+        loadPages(1);
+
+        source.onVisibleRangeChanged(0, PAGE_SIZE - PREFETCH_DISTANCE);
+        source.onVisibleRangeChanged(0, PAGE_SIZE - PREFETCH_DISTANCE);
+        source.onVisibleRangeChanged(1, PAGE_SIZE - 1);
+        assertEquals(Collections.singletonList(2), service.pendingPages());
+    }
+
+    public void testShortPageEndsTheFeed() {
+        loadPages(1);
+        source.onVisibleRangeChanged(0, PAGE_SIZE - 1);
+        service.respond(2, 4);
+
+        assertTrue(source.isLastPageLoaded());
+        assertEquals(PAGE_SIZE + 4, source.getPhotos().size());
+        source.onVisibleRangeChanged(PAGE_SIZE, PAGE_SIZE + 3);
+        assertTrue(service.pendingPages().isEmpty());
+    }
+
+    public void testDroppedPageIsReloadedNearVisibleRange() {
+        loadPages(4);
+        events.clear();
+
+        // pages 2 and 3 are visible or next to it, pages 0 and 1 go
+        source.dropFarPages(3 * PAGE_SIZE + 5, 4 * PAGE_SIZE - 1);
+        assertEquals(Arrays.asList("changed 0 " + PAGE_SIZE, "changed " + PAGE_SIZE + " " + PAGE_SIZE), events);
+        assertFalse(source.getPhotos().isLoaded(0));
+        assertFalse(source.getPhotos().isLoaded(2 * PAGE_SIZE - 1));
+        assertTrue(source.getPhotos().isLoaded(2 * PAGE_SIZE));
+        // unloaded photos keep their ids
+        assertEquals(photoId(1, 0), source.getPhotos().getId(0));
+
+        events.clear();
+        source.onVisibleRangeChanged(2 * PAGE_SIZE, 3 * PAGE_SIZE - 1);
+        assertEquals(Collections.singletonList(2), service.pendingPages());
+
+        service.respond(2, PAGE_SIZE);
+        assertTrue(source.getPhotos().isLoaded(PAGE_SIZE));
+        assertEquals(photoId(2, 0), source.getPhotos().getId(PAGE_SIZE));
+        // cells of the page show placeholders - they are rebound
+        assertEquals(Collections.singletonList("changed " + PAGE_SIZE + " " + PAGE_SIZE), events);
+
+        source.onVisibleRangeChanged(2 * PAGE_SIZE, 3 * PAGE_SIZE - 1);
+        assertTrue(service.pendingPages().isEmpty());
+    }
+
+    public void testReloadedPageTakesNewPhotos() {
+        loadPages(4);
+        source.dropFarPages(3 * PAGE_SIZE, 4 * PAGE_SIZE - 1);
+
+        source.onVisibleRangeChanged(2 * PAGE_SIZE, 3 * PAGE_SIZE - 1);
+        service.respond(2, PAGE_SIZE, 3);
+
+        assertEquals(photoId(2, 2), source.getPhotos().getId(PAGE_SIZE + 2));
+        assertEquals(photoId(2, 3) + FakeService.REPLACED, source.getPhotos().getId(PAGE_SIZE + 3));
+        assertEquals(4 * PAGE_SIZE, source.getPhotos().size());
+    }
+
+    public void testShortReloadKeepsPageDropped() {
+        loadPages(4);
+        source.dropFarPages(3 * PAGE_SIZE, 4 * PAGE_SIZE - 1);
+
+        source.onVisibleRangeChanged(2 * PAGE_SIZE, 3 * PAGE_SIZE - 1);
+        service.respond(2, PAGE_SIZE / 2);
+        assertTrue(source.getPhotos().isLoaded(PAGE_SIZE));
+        assertFalse(source.getPhotos().isLoaded(2 * PAGE_SIZE - 1));
+
+        // not requested again right away
+        source.onVisibleRangeChanged(2 * PAGE_SIZE, 3 * PAGE_SIZE - 1);
+        assertTrue(service.pendingPages().isEmpty());
+    }
+
+    private void loadPages(int count) {
+        source.start();
+        service.respond(1, PAGE_SIZE);
+        for (int page = 2; page <= count; page++) {
+            source.onVisibleRangeChanged(0, source.getPhotos().size() - 1);
+            service.respond(page, PAGE_SIZE);
+        }
+        assertEquals(count * PAGE_SIZE, source.getPhotos().size());
+    }
+
+    private static int photoId(int page, int index) {
+        return page * 1000 + index;
+    }
+
+    /**
+     * Keeps requests until the test answers them with a canned page.
+     */
+    private static class FakeService implements FiveHundredPxService {
+
+        /**
+         * Added to ids of photos that changed since the page was first loaded.
+         */
+        static final int REPLACED = 100;
+
+        private final List<Integer> pages = new ArrayList<Integer>();
+
+        private final List<Callback<PhotoPage>> callbacks = new ArrayList<Callback<PhotoPage>>();
+
+        @Override
+        public void getPopularPhotos(int page, int resultsPerPage, Callback<PhotoPage> callback) {
+            assertEquals(PAGE_SIZE, resultsPerPage);
+            pages.add(page);
+            callbacks.add(callback);
+        }
+
+        List<Integer> pendingPages() {
+            return new ArrayList<Integer>(pages);
+        }
+
+        void respond(int page, int count) {
+            respond(page, count, count);
+        }
+
+        /**
+         * @param unchanged number of photos at the start of the page that are the same as on the first load
+         */
+        void respond(int page, int count, int unchanged) {
+            final int index = pages.indexOf(page);
+            assertTrue("page " + page + " was not requested", index >= 0);
+            pages.remove(index);
+            final Callback<PhotoPage> callback = callbacks.remove(index);
+            PhotoPage response = new PhotoPage();
+            response.current_page = page;
+            response.total_pages = count < PAGE_SIZE ? page : page + 1;
+            for (int i = 0; i < count; i++) {
+                final int id = photoId(page, i) + (i < unchanged ? 0 : REPLACED);
+                response.photos.add(id, 100, 100, "http://example.com/" + id + ".jpg", "photo " + id, "user");
+            }
+            callback.success(response, null);
+        }
+    }
+}
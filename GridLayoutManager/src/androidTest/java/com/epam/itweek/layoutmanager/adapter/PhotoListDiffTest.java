@@ -0,0 +1,177 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PhotoListDiffTest extends TestCase {
+
+    public void testIdenticalListsHaveNoUpdates() {
+        PhotoListDiff diff = PhotoListDiff.compute(photos(1, 2, 3), photos(1, 2, 3));
+        assertTrue(diff.isEmpty());
+    }
+
+    public void testInsertOnly() {
+        PhotoColumns oldPhotos = photos(1, 2, 3);
+        PhotoColumns newPhotos = photos(0, 1, 4, 5, 2, 3, 6);
+        List<String> updates = assertDiff(oldPhotos, newPhotos);
+        assertEquals(Arrays.asList("insert 0 1", "insert 2 2", "insert 6 1"), updates);
+    }
+
+    public void testRemoveOnly() {
+        PhotoColumns oldPhotos = photos(0, 1, 2, 3, 4, 5, 6);
+        PhotoColumns newPhotos = photos(1, 4, 5);
+        List<String> updates = assertDiff(oldPhotos, newPhotos);
+        assertEquals(Arrays.asList("remove 6 1", "remove 2 2", "remove 0 1"), updates);
+    }
+
+    public void testMove() {
+        PhotoColumns oldPhotos = photos(1, 2, 3, 4, 5);
+        PhotoColumns newPhotos = photos(1, 5, 2, 3, 4);
+        List<String> updates = assertDiff(oldPhotos, newPhotos);
+        assertEquals(Collections.singletonList("move 4 1"), updates);
+    }
+
+    public void testChange() {
+        PhotoColumns oldPhotos = photos(1, 2, 3, 4);
+        PhotoColumns newPhotos = new PhotoColumns();
+        add(newPhotos, 1, 0);
+        add(newPhotos, 2, 1);
+        add(newPhotos, 3, 1);
+        add(newPhotos, 4, 0);
+        List<String> updates = assertDiff(oldPhotos, newPhotos);
+        assertEquals(Collections.singletonList("change 1 2"), updates);
+    }
+
+    public void testMixed() {
+        PhotoColumns oldPhotos = photos(1, 2, 3, 4, 5, 6, 7, 8);
+        PhotoColumns newPhotos = new PhotoColumns();
+        add(newPhotos, 9, 0);
+        add(newPhotos, 1, 0);
+        add(newPhotos, 7, 0);
+        add(newPhotos, 3, 1);
+        add(newPhotos, 4, 0);
+        add(newPhotos, 10, 0);
+        add(newPhotos, 6, 0);
+        add(newPhotos, 2, 1);
+        assertDiff(oldPhotos, newPhotos);
+    }
+
+    public void testTooManyEditsReplaceEverything() {
+        final int size = 600;
+        PhotoColumns oldPhotos = new PhotoColumns();
+        PhotoColumns newPhotos = new PhotoColumns();
+        for (int i = 0; i < size; i++) {
+            add(oldPhotos, i, 0);
+            add(newPhotos, size + i, 0);
+        }
+        List<String> updates = assertDiff(oldPhotos, newPhotos);
+        assertEquals(Arrays.asList("remove 0 " + size, "insert 0 " + size), updates);
+    }
+
+    public void testRandomEditsMatchNewList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> ids = new ArrayList<Integer>();
+            final int oldSize = random.nextInt(40);
+            for (int i = 0; i < oldSize; i++) {
+                ids.add(i);
+            }
+            PhotoColumns oldPhotos = new PhotoColumns();
+            for (int id : ids) {
+                add(oldPhotos, id, 0);
+            }
+            int nextId = ids.size();
+            final int edits = random.nextInt(10);
+            for (int i = 0; i < edits; i++) {
+                final int operation = random.nextInt(3);
+                if (operation == 0 || ids.isEmpty()) {
+                    ids.add(random.nextInt(ids.size() + 1), nextId++);
+                } else if (operation == 1) {
+                    ids.remove(random.nextInt(ids.size()));
+                } else {
+                    ids.add(random.nextInt(ids.size()), ids.remove(random.nextInt(ids.size())));
+                }
+            }
+            PhotoColumns newPhotos = new PhotoColumns();
+            for (int id : ids) {
+                add(newPhotos, id, random.nextInt(8) == 0 ? 1 : 0);
+            }
+            assertDiff(oldPhotos, newPhotos);
+        }
+    }
+
+    /**
+     * Applies dispatched updates to items of the old list and checks that the result is the new list.
+     *
+     * @return dispatched updates
+     */
+    private static List<String> assertDiff(PhotoColumns oldPhotos, final PhotoColumns newPhotos) {
+        final List<String> items = items(oldPhotos);
+        final List<String> updates = new ArrayList<String>();
+        PhotoListDiff.compute(oldPhotos, newPhotos).dispatchUpdatesTo(new PhotoListDiff.Callback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("insert " + position + " " + count);
+                for (int i = position; i < position + count; i++) {
+                    items.add(i, item(newPhotos, i));
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("remove " + position + " " + count);
+                items.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("move " + fromPosition + " " + toPosition);
+                items.add(toPosition, items.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                updates.add("change " + position + " " + count);
+                for (int i = position; i < position + count; i++) {
+                    assertEquals("changed photo has another id", newPhotos.getId(i), id(items.get(i)));
+                    items.set(i, item(newPhotos, i));
+                }
+            }
+        });
+        assertEquals(updates.toString(), items(newPhotos), items);
+        return updates;
+    }
+
+    private static PhotoColumns photos(int... ids) {
+        PhotoColumns photos = new PhotoColumns();
+        for (int id : ids) {
+            add(photos, id, 0);
+        }
+        return photos;
+    }
+
+    private static void add(PhotoColumns photos, int id, int version) {
+        photos.add(id, 100, 100, "http://example.com/" + id + ".jpg", "photo " + id + " v" + version, "user");
+    }
+
+    private static List<String> items(PhotoColumns photos) {
+        List<String> items = new ArrayList<String>();
+        for (int i = 0; i < photos.size(); i++) {
+            items.add(item(photos, i));
+        }
+        return items;
+    }
+
+    private static String item(PhotoColumns photos, int position) {
+        return photos.getId(position) + ":" + photos.getName(position);
+    }
+
+    private static int id(String item) {
+        return Integer.parseInt(item.substring(0, item.indexOf(':')));
+    }
+}
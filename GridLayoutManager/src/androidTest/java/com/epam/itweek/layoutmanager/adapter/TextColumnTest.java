@@ -0,0 +1,85 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TextColumnTest extends TestCase {
+
+    /**
+     * Two bytes per character in UTF-8.
+     */
+    private static final String THREE = "\u0442\u0440\u0438";
+
+    private final TextColumn column = new TextColumn();
+
+    public void testAddAndGet() {
+        column.add("first");
+        column.add(null);
+        column.add(THREE);
+        assertEquals(3, column.size());
+        assertEquals("first", column.get(0));
+        assertTrue(column.isNull(1));
+        assertNull(column.get(1));
+        assertEquals(THREE, column.get(2));
+        assertEquals(THREE.length() * 2, column.getByteLength(2));
+    }
+
+    public void testReplaceLongValueWithShortOne() {
+        column.add(repeat('a', 1000));
+        column.set(0, "short");
+        assertEquals("short", column.get(0));
+    }
+
+    public void testReplaceFromAnotherColumn() {
+        TextColumn source = new TextColumn();
+        source.add("short");
+        column.add(repeat('b', 1000));
+        column.set(0, source, 0);
+        assertEquals("short", column.get(0));
+    }
+
+    public void testTrimKeepsLiveValues() {
+        for (int i = 0; i < 100; i++) {
+            column.add(repeat('c', 100) + i);
+        }
+        for (int i = 0; i < 90; i++) {
+            column.set(i, null);
+        }
+        column.trim();
+        for (int i = 90; i < 100; i++) {
+            assertEquals(repeat('c', 100) + i, column.get(i));
+        }
+    }
+
+    public void testRandomUpdatesMatchStrings() {
+        Random random = new Random(7);
+        String[] expected = new String[50];
+        for (int i = 0; i < expected.length; i++) {
+            column.add(null);
+        }
+        for (int round = 0; round < 5000; round++) {
+            final int index = random.nextInt(expected.length);
+            final int operation = random.nextInt(10);
+            if (operation == 0) {
+                expected[index] = null;
+            } else if (operation == 1) {
+                column.trim();
+                continue;
+            } else {
+                expected[index] = repeat('d', random.nextInt(operation == 2 ? 2000 : 20)) + round;
+            }
+            column.set(index, expected[index]);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], column.get(i));
+            }
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
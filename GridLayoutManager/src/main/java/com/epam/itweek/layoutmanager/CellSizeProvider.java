@@ -0,0 +1,20 @@
+package com.epam.itweek.layoutmanager;
+
+/**
+ * Implemented by layout managers that know the size of an item before it is measured,
+ * so that adapters can request content of the exact size at bind time.
+ */
+public interface CellSizeProvider {
+
+    /**
+     * @param position adapter position of the item
+     * @return width of the cell in pixels or 0 if it is not known yet
+     */
+    int getCellWidth(int position);
+
+    /**
+     * @param position adapter position of the item
+     * @return height of the cell in pixels or 0 if it is not known yet
+     */
+    int getCellHeight(int position);
+}
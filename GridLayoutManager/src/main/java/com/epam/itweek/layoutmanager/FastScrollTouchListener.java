@@ -0,0 +1,99 @@
+package com.epam.itweek.layoutmanager;
+
+import android.support.v7.widget.RecyclerView;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+
+/**
+ * Drag-to-position fast scrolling for {@link GridLayoutManager}.
+ *
+ * Touches that start on the thumb of the vertical scrollbar - a strip along the right edge of the RecyclerView,
+ * as high as the thumb is drawn but at least {@link #MIN_THUMB_HEIGHT_DP} - are intercepted and vertical touch
+ * position is translated into a fraction of the content. Touches elsewhere in the strip go to the cells under it.
+ * Layout manager jumps right to that fraction and lays out only the destination rows.
+ */
+public class FastScrollTouchListener implements RecyclerView.OnItemTouchListener {
+
+    private static final int TOUCH_AREA_WIDTH_DP = 32;
+
+    private static final int MIN_THUMB_HEIGHT_DP = 48;
+
+    private final GridLayoutManager layoutManager;
+
+    private boolean dragging;
+
+    /**
+     * Distance between the top of the thumb and the touch that grabbed it, so the thumb does not jump under the finger.
+     */
+    private float grabOffset;
+
+    public FastScrollTouchListener(GridLayoutManager layoutManager) {
+        this.layoutManager = layoutManager;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN && recyclerView.getLayoutManager() == layoutManager
+                && isOnThumb(recyclerView, event)) {
+            dragging = true;
+            grabOffset = event.getY() - getThumbTop(recyclerView);
+            recyclerView.stopScroll();
+        }
+        return dragging;
+    }
+
+    @Override
+    public void onTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                scrollTo(recyclerView, event);
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                dragging = false;
+                break;
+        }
+    }
+
+    private boolean isOnThumb(RecyclerView recyclerView, MotionEvent event) {
+        if (layoutManager.getViewportFraction() >= 1f) {
+            // everything fits, there is no scrollbar
+            return false;
+        }
+        final float touchAreaWidth = dpToPx(recyclerView, TOUCH_AREA_WIDTH_DP);
+        final float thumbTop = getThumbTop(recyclerView);
+        return event.getX() >= recyclerView.getWidth() - touchAreaWidth
+                && event.getY() >= thumbTop && event.getY() < thumbTop + getThumbHeight(recyclerView);
+    }
+
+    /**
+     * Thumb moves along the track the same way the framework scrollbar does: it is as much shorter than the track
+     * as the viewport is shorter than the content and its top travels the rest of the track.
+     */
+    private float getThumbTop(RecyclerView recyclerView) {
+        return recyclerView.getPaddingTop()
+                + (getTrackHeight(recyclerView) - getThumbHeight(recyclerView)) * layoutManager.getScrollFraction();
+    }
+
+    private float getThumbHeight(RecyclerView recyclerView) {
+        final int trackHeight = getTrackHeight(recyclerView);
+        return Math.min(trackHeight, Math.max(dpToPx(recyclerView, MIN_THUMB_HEIGHT_DP),
+                trackHeight * layoutManager.getViewportFraction()));
+    }
+
+    private static int getTrackHeight(RecyclerView recyclerView) {
+        return recyclerView.getHeight() - recyclerView.getPaddingTop() - recyclerView.getPaddingBottom();
+    }
+
+    private static float dpToPx(RecyclerView recyclerView, int dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, recyclerView.getResources().getDisplayMetrics());
+    }
+
+    private void scrollTo(RecyclerView recyclerView, MotionEvent event) {
+        final float travel = getTrackHeight(recyclerView) - getThumbHeight(recyclerView);
+        if (travel <= 0) {
+            return;
+        }
+        layoutManager.scrollToFraction((event.getY() - grabOffset - recyclerView.getPaddingTop()) / travel);
+    }
+}
@@ -1,18 +1,26 @@
 package com.epam.itweek.layoutmanager;
 
+import android.content.Context;
+import android.graphics.PointF;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v7.widget.LinearSmoothScroller;
 import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
-import hugo.weaving.DebugLog;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple grid layout manager.
  */
-public class GridLayoutManager extends RecyclerView.LayoutManager {
+public class GridLayoutManager extends RecyclerView.LayoutManager implements CellSizeProvider, VisibleRangeProvider {
 
-    private static final boolean DEBUG = true;
+    private static final boolean DEBUG = false;
 
     private static final String TAG = GridLayoutManager.class.getSimpleName();
 
@@ -23,43 +31,554 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
      */
     private RenderState mRenderState;
 
+    /**
+     * Default number of rows that stay attached beyond each edge of the viewport.
+     */
+    private static final int DEFAULT_RETAINED_ROWS = 1;
+
+    /**
+     * Maximum number of rows prefetched ahead of the viewport in the scroll direction.
+     */
+    private static final int MAX_PREFETCH_ROWS = 2;
+
+    /**
+     * How far ahead in time we look when deciding how many rows to prefetch for the current velocity.
+     */
+    private static final long PREFETCH_LOOKAHEAD_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Default amount of idle time per frame prefetch may spend on creating and binding views.
+     */
+    private static final long DEFAULT_PREFETCH_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /**
+     * Scroll events that are further apart than this are not considered a part of the same gesture
+     * for velocity estimation.
+     */
+    private static final long VELOCITY_RESET_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Used in {@link #mPendingScrollPositionOffset} when scrolled to position should be just made visible.
+     */
+    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+
+    /**
+     * Smooth scroll to a position that is more than this number of screens away jumps closer first
+     * so that we do not create and bind every row in between.
+     */
+    private static final int SMOOTH_SCROLL_JUMP_SCREENS = 1;
+
+    /**
+     * Value of {@link #mFirstDirtyChild} when none of the attached rows has to be laid out again.
+     */
+    private static final int NO_DIRTY_CHILDREN = Integer.MAX_VALUE;
+
     private final int columns;
 
+    /**
+     * Maps positions to rows taking span sizes of items into account.
+     */
+    private final RowIndex mRowIndex;
+
+    /**
+     * Index of the first attached child that is affected by adapter changes since the last layout.
+     * Rows above the row of this child are kept attached as is on the next layout pass.
+     * 0 means that everything has to be laid out again.
+     */
+    private int mFirstDirtyChild = 0;
+
+    /**
+     * Size of the layout the attached rows were laid out for.
+     */
+    private int mLayoutWidth;
+
+    private int mLayoutHeight;
+
+    /**
+     * Position requested by {@link #scrollToPosition(int)}, applied on the next layout pass.
+     */
+    private int mPendingScrollPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * Offset of the pending scroll position row from the top padding.
+     */
+    private int mPendingScrollPositionOffset = INVALID_OFFSET;
+
+    private final PrefetchTask mPrefetchTask = new PrefetchTask();
+
+    private boolean mPrefetchEnabled;
+
+    private long mPrefetchBudgetNs = DEFAULT_PREFETCH_BUDGET_NS;
+
+    /**
+     * Number of rows kept attached beyond the edge of the viewport after they scroll out of it.
+     */
+    private int mRetainedRows = DEFAULT_RETAINED_ROWS;
+
+    private RecyclerView mRecyclerView;
+
+    private final LayoutMetrics mMetrics = new LayoutMetrics();
+
+    /**
+     * Incremented whenever cached measurements of children become stale for a reason
+     * that is not a part of the cell size, e.g. item decorations changed.
+     * Children measured with an older value are measured again.
+     */
+    private int mMeasureGeneration = 1;
+
     public GridLayoutManager(int columns) {
         this.columns = columns;
+        mRowIndex = new RowIndex(columns);
+    }
+
+    /**
+     * Sets the source of span sizes for items. Item spanning several columns is as wide as these columns
+     * and as high as a regular row. An item that does not fit into the rest of a row starts a new one.
+     *
+     * @param spanSizeLookup lookup of span sizes or null if every item takes exactly one column
+     */
+    public void setSpanSizeLookup(SpanSizeLookup spanSizeLookup) {
+        mRowIndex.setSpanSizeLookup(spanSizeLookup);
+        mFirstDirtyChild = 0;
+        requestLayout();
+    }
+
+    public SpanSizeLookup getSpanSizeLookup() {
+        return mRowIndex.getSpanSizeLookup();
+    }
+
+    /**
+     * Sets the number of rows that stay attached after they scroll out of the viewport.
+     * Scrolling back over retained rows only translates them - no view is fetched from the recycler,
+     * rebound, measured or laid out. Rows beyond that are recycled as a whole.
+     *
+     * @param rows number of rows to retain beyond each edge of the viewport
+     */
+    public void setRetainedRows(int rows) {
+        mRetainedRows = Math.max(0, rows);
+    }
+
+    public int getRetainedRows() {
+        return mRetainedRows;
+    }
+
+    /**
+     * Number of views the grid holds at most at its current size: rows intersecting the viewport,
+     * retained rows beyond both edges and rows in the recycler's view cache.
+     * That many views have to be created before scrolling stops creating new ones.
+     *
+     * @return number of views or 0 if the grid is not measured yet
+     */
+    public int getMaxViewCount() {
+        final int cellSize = getCellSize();
+        if (cellSize <= 0 || getHeight() <= 0) {
+            return 0;
+        }
+        // a partially visible row at both edges
+        final int visibleRows = (getHeight() + cellSize - 1) / cellSize + 1;
+        final int cachedRows = 1 + (mPrefetchEnabled ? MAX_PREFETCH_ROWS : 0);
+        return (visibleRows + 2 * mRetainedRows + cachedRows) * columns;
+    }
+
+    /**
+     * Drops cached measurements of all children, so every child is measured again when it is laid out next time.
+     * Has to be called after an {@link RecyclerView.ItemDecoration} is added or removed -
+     * RecyclerView does not tell layout manager about it.
+     */
+    public void invalidateMeasureCache() {
+        mMeasureGeneration++;
+        requestLayout();
+    }
+
+    @Override
+    public int getCellWidth(int position) {
+        return getCellSize() * getRowIndex().getSpanSize(position);
+    }
+
+    @Override
+    public int getCellHeight(int position) {
+        return getCellSize();
+    }
+
+    /**
+     * Rows are uniform, so this is pure math on the current scroll offset and works for items
+     * that are not attached yet, e.g. the ones being bound or prefetched.
+     *
+     * @param position adapter position of an item
+     * @return 0 if the row of the item intersects the viewport, otherwise number of rows between it and the viewport
+     */
+    @Override
+    public int getRowDistanceFromViewport(int position) {
+        if (getCellSize() <= 0) {
+            return 0;
+        }
+        final int row = getRowForPosition(position);
+        final int firstVisibleRow = getFirstVisibleRow();
+        if (row < firstVisibleRow) {
+            return firstVisibleRow - row;
+        }
+        return Math.max(0, row - getLastVisibleRow());
+    }
+
+    /**
+     * @return adapter position of the first item of the first row that intersects the viewport
+     * or {@link RecyclerView#NO_POSITION} if nothing is laid out
+     */
+    @Override
+    public int findFirstVisibleItemPosition() {
+        if (getChildCount() == 0 || getCellSize() <= 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        return getFirstPositionInRow(getFirstVisibleRow());
+    }
+
+    /**
+     * @return adapter position of the last item of the last row that intersects the viewport
+     * or {@link RecyclerView#NO_POSITION} if nothing is laid out
+     */
+    @Override
+    public int findLastVisibleItemPosition() {
+        if (getChildCount() == 0 || getCellSize() <= 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        return Math.min(getItemCount() - 1, getLastPositionInRow(getLastVisibleRow()));
+    }
+
+    private int getFirstVisibleRow() {
+        return getCurrentScrollOffset() / getCellSize();
+    }
+
+    private int getLastVisibleRow() {
+        return (getCurrentScrollOffset() + Math.max(1, getVerticalSpace()) - 1) / getCellSize();
+    }
+
+    /**
+     * @return counters of the layout hot path, disabled by default
+     */
+    public LayoutMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Enables creation and binding of the upcoming rows in the idle time between frames.
+     * Prefetched views are put into the first level view cache of the recycler so that the next
+     * {@code layoutRow(...)} only has to attach them.
+     *
+     * @param enabled true to prefetch rows ahead of the scroll direction
+     */
+    public void setPrefetchEnabled(boolean enabled) {
+        mPrefetchEnabled = enabled;
+        if (!enabled) {
+            mPrefetchTask.cancel();
+        }
+        updateViewCacheSize();
+    }
+
+    public boolean isPrefetchEnabled() {
+        return mPrefetchEnabled;
+    }
+
+    /**
+     * @param budgetMs amount of idle time per frame prefetch is allowed to spend on creating and binding views
+     */
+    public void setPrefetchFrameBudget(long budgetMs) {
+        mPrefetchBudgetNs = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    @Override
+    public void onAttachedToWindow(RecyclerView view) {
+        super.onAttachedToWindow(view);
+        mRecyclerView = view;
+        updateViewCacheSize();
+    }
+
+    /**
+     * Recently scrolled out rows stay attached, so the first level cache holds one row recycled
+     * beyond them and the prefetched rows. Depends on the column count and prefetch only,
+     * so it is set when they change rather than on every layout.
+     */
+    private void updateViewCacheSize() {
+        if (mRecyclerView != null) {
+            mRecyclerView.setItemViewCacheSize(columns * (1 + (mPrefetchEnabled ? MAX_PREFETCH_ROWS : 0)));
+        }
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view) {
+        super.onDetachedFromWindow(view);
+        mPrefetchTask.cancel();
+        mRecyclerView = null;
     }
 
     @Override
     public RecyclerView.LayoutParams generateDefaultLayoutParams() {
-        return new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+        return new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
                 ViewGroup.LayoutParams.MATCH_PARENT);
     }
 
+    @Override
+    public RecyclerView.LayoutParams generateLayoutParams(Context c, AttributeSet attrs) {
+        return new LayoutParams(c, attrs);
+    }
+
+    @Override
+    public RecyclerView.LayoutParams generateLayoutParams(ViewGroup.LayoutParams lp) {
+        if (lp instanceof ViewGroup.MarginLayoutParams) {
+            return new LayoutParams((ViewGroup.MarginLayoutParams) lp);
+        } else {
+            return new LayoutParams(lp);
+        }
+    }
+
+    @Override
+    public boolean checkLayoutParams(RecyclerView.LayoutParams lp) {
+        return lp instanceof LayoutParams;
+    }
+
     @Override
     public boolean canScrollVertically() {
         return true;
     }
 
-    @Override @DebugLog
+    @Override
+    public boolean supportsPredictiveItemAnimations() {
+        return mPendingScrollPosition == RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public void onAdapterChanged(RecyclerView.Adapter oldAdapter, RecyclerView.Adapter newAdapter) {
+        mPrefetchTask.reset();
+        mRowIndex.invalidate();
+        mFirstDirtyChild = 0;
+    }
+
+    @Override
+    public void onItemsChanged(RecyclerView recyclerView) {
+        mPrefetchTask.reset();
+        mRowIndex.invalidate();
+        mFirstDirtyChild = 0;
+    }
+
+    @Override
+    public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        mRowIndex.onItemsInserted(positionStart, itemCount);
+        onItemRangeShifted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        mRowIndex.onItemsRemoved(positionStart, itemCount);
+        onItemRangeShifted(positionStart, -itemCount);
+    }
+
+    @Override
+    public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        mRowIndex.onItemsRemoved(from, itemCount);
+        mRowIndex.onItemsInserted(to, itemCount);
+        onItemRangeShifted(from, -itemCount);
+        onItemRangeShifted(to, itemCount);
+    }
+
+    @Override
+    public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
+        mRowIndex.onItemsUpdated(positionStart, itemCount);
+        mPrefetchTask.reset();
+        if (getChildCount() == 0) {
+            return;
+        }
+        final int firstPosition = getPosition(getChildClosestToStart());
+        final int lastPosition = getPosition(getChildClosestToEnd());
+        if (positionStart > lastPosition || positionStart + itemCount <= firstPosition) {
+            // attached views are not affected
+            return;
+        }
+        markChildrenDirty(Math.max(positionStart, firstPosition) - firstPosition);
+    }
+
+    /**
+     * Tracks which of the attached rows are affected by inserted or removed items.
+     *
+     * @param positionStart position of the first inserted or removed item
+     * @param shift         number of inserted items or negative number of removed items
+     */
+    private void onItemRangeShifted(int positionStart, int shift) {
+        mPrefetchTask.reset();
+        if (getChildCount() == 0) {
+            return;
+        }
+        final int firstPosition = getPosition(getChildClosestToStart());
+        final int lastPosition = getPosition(getChildClosestToEnd());
+        if (positionStart > lastPosition + 1) {
+            // change after the last attached row does not move anything we show
+            return;
+        }
+        if (positionStart + Math.max(0, -shift) <= firstPosition) {
+            // change before the first attached row only shifts the anchor,
+            // layout checks if attached items still start their rows
+            return;
+        }
+        markChildrenDirty(Math.max(positionStart, firstPosition) - firstPosition);
+    }
+
+    /**
+     * Row index is not consistent while adapter changes are dispatched one by one,
+     * so we only remember the child and find its row during layout.
+     */
+    private void markChildrenDirty(int childIndex) {
+        mFirstDirtyChild = Math.min(mFirstDirtyChild, Math.max(0, childIndex));
+    }
+
+    @Override
     public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
         ensureRenderState();
+        mPrefetchTask.reset();
 
-        int anchorCoordinate, anchorItemPosition;
-        if (getChildCount() == 0) {
-            anchorCoordinate = getPaddingTop();
+        if (state.isPreLayout()) {
+            layoutForPredictiveAnimations(recycler, state);
+            return;
+        }
+
+        if (!layoutIncrementally(recycler, state)) {
+            layoutFromAnchor(recycler, state);
+        }
+        mFirstDirtyChild = NO_DIRTY_CHILDREN;
+        mLayoutWidth = getWidth();
+        mLayoutHeight = getHeight();
+    }
+
+    /**
+     * Pre-layout pass of predictive animations. Attached views still represent the old adapter state
+     * so we keep them and only add rows that will slide into the space freed by removed items.
+     *
+     * @param recycler Current recycler that is attached to RecyclerView
+     * @param state    Context passed by the RecyclerView to control scroll steps.
+     */
+    private void layoutForPredictiveAnimations(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        final int childCount = getChildCount();
+        if (childCount == 0) {
+            return;
+        }
+        int removed = 0;
+        for (int i = 0; i < childCount; i++) {
+            RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) getChildAt(i).getLayoutParams();
+            if (params.isItemRemoved()) {
+                removed++;
+            }
+        }
+        final View lastChild = getChildClosestToEnd();
+        // rough estimate, spans of the items that slide in are not known before the real layout
+        final int extraRows = (removed + columns - 1) / columns;
+        updateRenderStateToFillEnd(getPosition(lastChild) + 1, getDecoratedVerticalEnd(lastChild));
+        mRenderState.mAvailable += extraRows * getCellSize();
+        fill(recycler, mRenderState, state);
+    }
+
+    /**
+     * Keeps attached rows that were not affected by adapter changes since the last layout and lays out
+     * only the rest of the viewport.
+     *
+     * @param recycler Current recycler that is attached to RecyclerView
+     * @param state    Context passed by the RecyclerView to control scroll steps.
+     * @return false if attached views can't be reused and whole viewport has to be laid out again
+     */
+    private boolean layoutIncrementally(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        final int childCount = getChildCount();
+        if (childCount == 0 || mFirstDirtyChild == 0 || mPendingScrollPosition != RecyclerView.NO_POSITION
+                || mLayoutWidth != getWidth() || mLayoutHeight != getHeight()) {
+            return false;
+        }
+        final View firstChild = getChildClosestToStart();
+        final int firstPosition = getPosition(firstChild);
+        if (getFirstPositionInRow(getRowForPosition(firstPosition)) != firstPosition) {
+            // items before the viewport were inserted or removed and moved attached items to other columns
+            return false;
+        }
+        // spans of untouched items did not change, so rows starting at the first child are packed as before
+        final int firstDirtyPosition = firstPosition + Math.min(childCount, mFirstDirtyChild);
+        // partially filled or dirty row can't be continued from its end - lay it out again
+        final int keptChildren = getFirstPositionInRow(getRowForPosition(firstDirtyPosition)) - firstPosition;
+        if (keptChildren <= 0) {
+            return false;
+        }
+        final View lastKeptChild = getChildAt(keptChildren - 1);
+        if (getPosition(lastKeptChild) != firstPosition + keptChildren - 1) {
+            return false;
+        }
+
+        for (int i = childCount - 1; i >= keptChildren; i--) {
+            detachAndScrapViewAt(i, recycler);
+        }
+        for (int i = 0; i < keptChildren; i++) {
+            View child = getChildAt(i);
+            if (child.isLayoutRequested()) {
+                // content of the view changed its size - measure and layout it again without rebinding
+                final int position = getPosition(child);
+                final int top = getDecoratedVerticalStart(child);
+                final int left = getCellSize() * mRowIndex.getColumn(position);
+                final int right = left + getCellSize() * mRowIndex.getSpanSize(position);
+                measureChildWithMargins(child, 0, 0);
+                RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) child.getLayoutParams();
+                layoutDecorated(child, left + params.leftMargin, top + params.topMargin,
+                        right - params.rightMargin, top + getCellSize() - params.bottomMargin);
+            }
+        }
+
+        updateRenderStateToFillEnd(getPosition(lastKeptChild) + 1, getDecoratedVerticalEnd(lastKeptChild));
+        fill(recycler, mRenderState, state);
+        return true;
+    }
+
+    /**
+     * Scraps all attached views and lays out the viewport around an anchor row - pending scroll position
+     * (also the one restored from the saved state), the first attached row or the start of the data.
+     *
+     * Rows are uniform, so the anchor is turned into a scroll offset and clamped to the scrollable range first.
+     * Then the viewport is filled from the anchor towards the end and towards the start, which leaves no gaps
+     * even if the anchor ends up in the middle of the viewport, e.g. after the width has changed.
+     *
+     * @param recycler Current recycler that is attached to RecyclerView
+     * @param state    Context passed by the RecyclerView to control scroll steps.
+     */
+    private void layoutFromAnchor(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int anchorItemPosition, anchorOffset;
+        if (mPendingScrollPosition != RecyclerView.NO_POSITION && mPendingScrollPosition < state.getItemCount()) {
+            anchorItemPosition = mPendingScrollPosition;
+            anchorOffset = calculateScrollOffsetForPosition(mPendingScrollPosition, mPendingScrollPositionOffset, state)
+                    - getRowForPosition(mPendingScrollPosition) * getCellSize();
+        } else if (getChildCount() == 0) {
             anchorItemPosition = 0;
+            anchorOffset = 0;
         } else {
-            View referenceChild = getChildClosestToStart(); // first child
-
-            anchorCoordinate = getDecoratedVerticalStart(referenceChild);
-            anchorItemPosition = getPosition(referenceChild);
+            // position and offset come from the same child - when the first row is removed,
+            // the offset of the next row has to be used with its position, or the viewport jumps by a row
+            final View anchorChild = findFirstValidChild();
+            anchorItemPosition = Math.max(0, Math.min(state.getItemCount() - 1, getPosition(anchorChild)));
+            anchorOffset = getPaddingTop() - getDecoratedVerticalStart(anchorChild);
+        }
+        if (state.getItemCount() > 0) {
+            // position restored from saved state waits for the data
+            mPendingScrollPosition = RecyclerView.NO_POSITION;
+            mPendingScrollPositionOffset = INVALID_OFFSET;
         }
 
         detachAndScrapAttachedViews(recycler);
+        if (state.getItemCount() == 0) {
+            return;
+        }
+
+        // rows always start at the first column
+        final int anchorRow = getRowForPosition(anchorItemPosition);
+        final int anchorRowOffset = anchorRow * getCellSize();
+        final int scrollOffset = Math.max(0, Math.min(getMaxScrollOffset(), anchorRowOffset + anchorOffset));
+        final int anchorCoordinate = getPaddingTop() + anchorRowOffset - scrollOffset;
+        anchorItemPosition = getFirstPositionInRow(anchorRow);
 
         // fill towards end
         updateRenderStateToFillEnd(anchorItemPosition, anchorCoordinate);
+        fill(recycler, mRenderState, state);
 
+        // fill towards start
+        updateRenderStateToFillStart(anchorItemPosition - 1, anchorCoordinate);
         fill(recycler, mRenderState, state);
     }
 
@@ -73,14 +592,13 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
      * @param state           Context passed by the RecyclerView to control scroll steps.
      * @return Number of pixels that it added. Useful for scroll functions.
      */
-    @DebugLog
     private int fill(RecyclerView.Recycler recycler, RenderState renderState, RecyclerView.State state) {
+        final long startNs = mMetrics.startTiming();
         if (renderState.mScrollingOffset != RenderState.SCOLLING_OFFSET_NaN) {
             // TODO ugly bug fix. should not happen
             if (renderState.mAvailable < 0) {
                 renderState.mScrollingOffset += renderState.mAvailable;
             }
-            Log.d(TAG, "fill: initial recycler pass");
             recycleByRenderState(recycler, renderState);
         }
 
@@ -99,16 +617,18 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
                 if (renderState.mAvailable < 0) {
                     renderState.mScrollingOffset += renderState.mAvailable;
                 }
-                Log.d(TAG, "fill: subsequent recycler pass");
                 recycleByRenderState(recycler, renderState);
             }
         }
 
+        mMetrics.onFill(startNs);
         return start - renderState.mAvailable;
     }
 
     /**
      * Layout a row single row of data.
+     * Items take as many columns as {@link SpanSizeLookup} says, row breaks come from {@link #mRowIndex}.
+     *
      * @param recycler        Current recycler that is attached to RecyclerView
      * @param renderState     Configuration on how we should fill out the available space.
      * @param state           Context passed by the RecyclerView to control scroll steps.
@@ -116,8 +636,9 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
      * @return Number of pixels that it added. Useful for scroll functions.
      */
     private int layoutRow(RecyclerView.Recycler recycler, RenderState renderState, RecyclerView.State state) {
-        int numberOfColumns = 0;
-        int cellSize = getWidth() / columns;
+        final long startNs = mMetrics.startTiming();
+        int numberOfItems = 0;
+        int cellSize = getCellSize();
         boolean backwardLayout = mRenderState.mLayoutDirection == RenderState.LAYOUT_START;
         int top;
         int bottom;
@@ -128,13 +649,17 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
             top = renderState.mOffset;
             bottom = top + cellSize;
         }
-        while (renderState.hasMore(state) && numberOfColumns < columns) {
-            int column = renderState.mCurrentPosition % columns;
+        final int row = getRowForPosition(renderState.mCurrentPosition);
+        final int firstPositionInRow = getFirstPositionInRow(row);
+        final int lastPositionInRow = getLastPositionInRow(row);
+        while (renderState.hasMore(state) && (numberOfItems == 0
+                || renderState.mCurrentPosition >= firstPositionInRow && renderState.mCurrentPosition <= lastPositionInRow)) {
+            final int position = renderState.mCurrentPosition;
 
-            int left = cellSize * column;
-            int right = left + cellSize;
+            int left = cellSize * mRowIndex.getColumn(position);
+            int right = left + cellSize * mRowIndex.getSpanSize(position);
 
-            numberOfColumns++;
+            numberOfItems++;
 
             View view = renderState.next(recycler);
             if (view == null) {
@@ -155,15 +680,213 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
                     , right - params.rightMargin, bottom - params.bottomMargin);
         }
 
+        mMetrics.onRowLaidOut(startNs);
         return cellSize;
     }
 
+    @Override
+    public void scrollToPosition(int position) {
+        mPendingScrollPosition = position;
+        mPendingScrollPositionOffset = INVALID_OFFSET;
+        requestLayout();
+    }
+
+    /**
+     * Scrolls to the given position so that its row starts {@code offset} pixels below the top padding.
+     * Only rows of the target viewport are laid out.
+     *
+     * @param position adapter position to scroll to
+     * @param offset   distance in pixels between the top padding and the start of the row of the item
+     */
+    public void scrollToPositionWithOffset(int position, int offset) {
+        mPendingScrollPosition = position;
+        mPendingScrollPositionOffset = offset;
+        requestLayout();
+    }
+
+    /**
+     * Smooth scrolls to the given position.
+     * If target is further than {@link #SMOOTH_SCROLL_JUMP_SCREENS} screens away we jump
+     * to a row that is that far from the target first and animate only the rest of the distance.
+     */
+    @Override
+    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        final int cellSize = getCellSize();
+        if (getChildCount() > 0 && cellSize > 0) {
+            final int currentRow = getRowForPosition(getPosition(getChildClosestToStart()));
+            final int targetRow = getRowForPosition(position);
+            final int jumpDistance = (getHeight() / cellSize + 1) * SMOOTH_SCROLL_JUMP_SCREENS;
+            if (Math.abs(targetRow - currentRow) > jumpDistance) {
+                final int jumpRow = targetRow > currentRow ? targetRow - jumpDistance : targetRow + jumpDistance;
+                scrollToPositionWithOffset(getFirstPositionInRow(jumpRow), 0);
+            }
+        }
+        GridSmoothScroller smoothScroller = new GridSmoothScroller(recyclerView.getContext());
+        smoothScroller.setTargetPosition(position);
+        startSmoothScroll(smoothScroller);
+    }
+
+    /**
+     * Jumps to the given fraction of the content. Used for drag-to-position fast scrolling:
+     * only rows of the destination viewport are laid out.
+     *
+     * @param fraction value between 0 (start of the content) and 1 (end of the content)
+     */
+    public void scrollToFraction(float fraction) {
+        final int cellSize = getCellSize();
+        final int itemCount = getItemCount();
+        if (cellSize <= 0 || itemCount == 0) {
+            return;
+        }
+        final float clamped = Math.max(0f, Math.min(1f, fraction));
+        final int scrollOffset = Math.round(getMaxScrollOffset() * clamped);
+        scrollToPositionWithOffset(getFirstPositionInRow(scrollOffset / cellSize), -(scrollOffset % cellSize));
+    }
+
+    /**
+     * @return fraction of the content scrolled past, the inverse of {@link #scrollToFraction(float)}
+     */
+    public float getScrollFraction() {
+        final int maxScrollOffset = getMaxScrollOffset();
+        if (getChildCount() == 0 || getCellSize() <= 0 || maxScrollOffset == 0) {
+            return 0f;
+        }
+        return Math.min(1f, getCurrentScrollOffset() / (float) maxScrollOffset);
+    }
+
+    /**
+     * @return fraction of the content that fits into the viewport, 1 if all of it does
+     */
+    public float getViewportFraction() {
+        final int contentHeight = getRowCount() * getCellSize();
+        if (contentHeight <= 0) {
+            return 1f;
+        }
+        return Math.min(1f, getVerticalSpace() / (float) contentHeight);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        return getCurrentScrollOffset();
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        return getVerticalSpace();
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        // rows are uniform so the whole content height is known without laying it out
+        return getRowCount() * getCellSize();
+    }
+
+    private PointF computeScrollVectorForPosition(int targetPosition) {
+        if (getChildCount() == 0) {
+            return null;
+        }
+        final int firstRow = getRowForPosition(getPosition(getChildClosestToStart()));
+        final int direction = getRowForPosition(targetPosition) < firstRow ? -1 : 1;
+        return new PointF(0, direction);
+    }
+
+    /**
+     * Calculates vertical scroll offset of the content when the given position is scrolled to.
+     * Rows are uniform so this is pure math and does not depend on the number of rows in between.
+     *
+     * @param position adapter position to scroll to
+     * @param offset   required distance between the top padding and the row of the position or
+     *                 {@link #INVALID_OFFSET} to scroll as little as needed to make the row visible
+     * @param state    Context passed by the RecyclerView
+     * @return scroll offset in pixels from the start of the content
+     */
+    private int calculateScrollOffsetForPosition(int position, int offset, RecyclerView.State state) {
+        final int cellSize = getCellSize();
+        final int rowStart = getRowForPosition(position) * cellSize;
+        int scrollOffset;
+        if (offset != INVALID_OFFSET) {
+            scrollOffset = rowStart - offset;
+        } else {
+            // scroll as little as possible to make the row fully visible
+            scrollOffset = getCurrentScrollOffset();
+            if (rowStart < scrollOffset) {
+                scrollOffset = rowStart;
+            } else if (rowStart + cellSize > scrollOffset + getVerticalSpace()) {
+                scrollOffset = rowStart + cellSize - getVerticalSpace();
+            }
+        }
+        return Math.max(0, Math.min(getMaxScrollOffset(), scrollOffset));
+    }
+
+    /**
+     * @return scroll offset at which the last row touches the bottom padding
+     */
+    private int getMaxScrollOffset() {
+        return Math.max(0, getRowCount() * getCellSize() - getVerticalSpace());
+    }
+
+    /**
+     * @return distance in pixels between the start of the content and the top padding
+     */
+    private int getCurrentScrollOffset() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        View firstChild = getChildClosestToStart();
+        return getRowForPosition(getPosition(firstChild)) * getCellSize()
+                + getPaddingTop() - getDecoratedVerticalStart(firstChild);
+    }
+
+    /**
+     * Saves the first visible row and its offset, so that the restored layout manager lays out the same rows
+     * on the first layout pass instead of starting from the top.
+     */
+    @Override
+    public Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState();
+        if (mPendingScrollPosition != RecyclerView.NO_POSITION) {
+            // not laid out since it was requested or restored
+            savedState.mAnchorPosition = mPendingScrollPosition;
+            savedState.mAnchorOffset = mPendingScrollPositionOffset;
+        } else if (getChildCount() > 0) {
+            // retained rows may be attached above the viewport - skip them
+            View anchorChild = getChildClosestToStart();
+            for (int i = 0; i < getChildCount(); i++) {
+                anchorChild = getChildAt(i);
+                if (getDecoratedVerticalEnd(anchorChild) > getPaddingTop()) {
+                    break;
+                }
+            }
+            savedState.mAnchorPosition = getFirstPositionInRow(getRowForPosition(getPosition(anchorChild)));
+            savedState.mAnchorOffset = getDecoratedVerticalStart(anchorChild) - getPaddingTop();
+        }
+        return savedState;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof SavedState) {
+            SavedState savedState = (SavedState) state;
+            mPendingScrollPosition = savedState.mAnchorPosition;
+            mPendingScrollPositionOffset = savedState.mAnchorOffset;
+            requestLayout();
+        }
+    }
+
     @Override
     public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
         return scrollBy(dy, recycler, state);
     }
 
-    @DebugLog
     private int scrollBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
         if (getChildCount() == 0 || dy == 0) {
             return 0;
@@ -199,6 +922,10 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
         if (DEBUG) {
             Log.d(TAG, "scroll req: " + dy + " scrolled: " + scrolled);
         }
+        mMetrics.onScrolled(Math.abs(scrolled), Math.min(freeScroll, Math.abs(scrolled)));
+        if (mPrefetchEnabled) {
+            mPrefetchTask.onScrolled(recycler, layoutDirection, scrolled);
+        }
         return scrolled;
     }
 
@@ -243,23 +970,35 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
 
     /**
      * Measure child according to rules of this layout manager:
-     *  - children are square
-     *  - size equals to a width of a container divided by the number of columns
+     *  - height equals to a width of a container divided by the number of columns
+     *  - width equals to the same value multiplied by the span size of the child, i.e. single span children are square
      *  - layout params of a child is not taken into consideration
      *
+     * Result only depends on the cell size, span of the child and decorations, so a child that was already
+     * measured for the same cell and did not request layout since then is not measured again.
+     * This is the common case for rows that come back from the scrap or the view cache while scrolling.
+     * Width and column count are covered by the cell size, decorations by {@link #invalidateMeasureCache()}.
+     *
      * @param child child to measure
      * @param widthUsed Width in pixels currently consumed by other views, if relevant
      * @param heightUsed Height in pixels currently consumed by other views, if relevant
      */
     @Override
     public void measureChildWithMargins(View child, int widthUsed, int heightUsed) {
-        final RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
-        int size = (int) (getWidth() / (float)columns);
-        lp.width = size;
+        int size = getCellSize();
+        int width = size * mRowIndex.getSpanSize(getPosition(child));
+        if (lp.mMeasureGeneration == mMeasureGeneration && lp.width == width && lp.height == size
+                && !child.isLayoutRequested()) {
+            mMetrics.onMeasureSkipped();
+            return;
+        }
+        lp.width = width;
         lp.height = size;
 
         super.measureChildWithMargins(child, widthUsed, heightUsed);
+        lp.mMeasureGeneration = mMeasureGeneration;
     }
 
     /**
@@ -274,7 +1013,6 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
      * @see #recycleViewsFromEnd(android.support.v7.widget.RecyclerView.Recycler, int)
      * @see android.support.v7.widget.LinearLayoutManager.RenderState#mLayoutDirection
      */
-    @DebugLog
     private void recycleByRenderState(RecyclerView.Recycler recycler, RenderState renderState) {
         int childCountBefore = getChildCount();
         if (renderState.mLayoutDirection == RenderState.LAYOUT_START) {
@@ -283,18 +1021,22 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
             recycleViewsFromStart(recycler, renderState.mScrollingOffset);
         }
         int childCountAfter = getChildCount();
-        Log.d(TAG, "recycleByRenderState: recycled items = " + (childCountBefore - childCountAfter));
+        mMetrics.onViewsRecycled(childCountBefore - childCountAfter);
     }
 
     /**
      * Recycles views that went out of bounds after scrolling towards the end of the layout.
      *
-     * We fill RecyclerView with rows of views, so we have to recycle whole rows as well.
+     * We fill RecyclerView with rows of views, so we recycle whole rows as well.
+     * {@link #mRetainedRows} rows above the viewport are not recycled - they stay attached and
+     * scrolling back to them costs a single offset.
      *
      * Iterate over children starting from first child.
-     * Row should be recycled if all children of a block are above {@code getStart() + dt}.
-     * Stop iteration once we found the first view with bottom edge below {@code getStart() + dt}
+     * Row should be recycled if all children of a block are above {@code getStart() + dt} and the retained rows.
+     * Stop iteration once we found the first view with bottom edge below that limit
      * - this means the whole row and everything below it can't be recycled.
+     * Children of a row share their bottom edge, so the found block always consists of whole rows
+     * and is recycled at once.
      *
      * RecyclerView features 2 types of view cache:
      *   1. Small number of cached views that are not used for binding to new data right away.
@@ -323,30 +1065,29 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
             }
         }
         // limit that block must not cross to be recycled
-        final int limit = getStart() + dt;
+        final int limit = getStart() + dt - mRetainedRows * getCellSize();
         final int childCount = getChildCount();
 
-        for (int i = 0; i < childCount; i++) {
-            View child = getChildAt(0);
-
-            int decoratedVerticalEnd = getDecoratedVerticalEnd(child);
-            if (decoratedVerticalEnd <= limit) {
-                removeAndRecycleViewAt(0, recycler);
-            } else {
-                // do not look further - here we already know that this block can't be recycled
-                break;
-            }
+        int recycleCount = 0;
+        while (recycleCount < childCount && getDecoratedVerticalEnd(getChildAt(recycleCount)) <= limit) {
+            recycleCount++;
+        }
+        // do not look further - here we already know that next row can't be recycled
+        for (int i = 0; i < recycleCount; i++) {
+            removeAndRecycleViewAt(0, recycler);
         }
     }
 
     /**
-     * Recycles views that went out of bounds after scrolling towards the end of the layout.
+     * Recycles views that went out of bounds after scrolling towards the start of the layout.
      *
-     * We fill RecyclerView with rows of views, so we have to recycle whole rows as well.
+     * We fill RecyclerView with rows of views, so we recycle whole rows as well.
+     * {@link #mRetainedRows} rows below the viewport are not recycled - they stay attached and
+     * scrolling back to them costs a single offset.
      *
      * Iterate over children starting from last child.
-     * Row should be recycled if all children of a row are below {@code getEnd() - dt}.
-     * Stop iteration once we found the first view with top edge above {@code getEnd() - dt}
+     * Row should be recycled if all children of a row are below {@code getEnd() - dt} and the retained rows.
+     * Stop iteration once we found the first view with top edge above that limit
      * - this means the whole block and everything above it can't be recycled.
      *
      * RecyclerView features 2 types of view cache:
@@ -377,19 +1118,30 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
             }
         }
         // limit that block must not cross to be recycled
-        final int limit = getEnd() - dt;
+        final int limit = getEnd() - dt + mRetainedRows * getCellSize();
         final int childCount = getChildCount();
-        for (int i = childCount - 1; i >= 0; i--) {
-            View child = getChildAt(i);
 
-            int decoratedVerticalStart = getDecoratedVerticalStart(child);
-            if (decoratedVerticalStart >= limit) {
-                removeAndRecycleViewAt(i, recycler);
-            } else {
-                // do not look further - here we already know that this block can't be recycled
-                break;
+        int firstRecycled = childCount;
+        while (firstRecycled > 0 && getDecoratedVerticalStart(getChildAt(firstRecycled - 1)) >= limit) {
+            firstRecycled--;
+        }
+        // do not look further - here we already know that previous row can't be recycled
+        for (int i = childCount - 1; i >= firstRecycled; i--) {
+            removeAndRecycleViewAt(i, recycler);
+        }
+    }
+
+    /**
+     * @return the first attached child that was not removed or the first child if all of them were
+     */
+    private View findFirstValidChild() {
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (!((RecyclerView.LayoutParams) child.getLayoutParams()).isItemRemoved()) {
+                return child;
             }
         }
+        return getChildClosestToStart();
     }
 
     /**
@@ -407,6 +1159,21 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
         mRenderState.mScrollingOffset = RenderState.SCOLLING_OFFSET_NaN;
     }
 
+    /**
+     * Prepare {@link #mRenderState} for end to start layout.
+     *
+     * @param itemPosition last element position to layout
+     * @param offset offset in px where children should end drawing themselves
+     */
+    private void updateRenderStateToFillStart(int itemPosition, int offset) {
+        mRenderState.mAvailable = offset - getStart();
+        mRenderState.mCurrentPosition = itemPosition;
+        mRenderState.mLayoutDirection = RenderState.LAYOUT_START;
+        mRenderState.mItemDirection = RenderState.ITEM_DIRECTION_HEAD;
+        mRenderState.mOffset = offset;
+        mRenderState.mScrollingOffset = RenderState.SCOLLING_OFFSET_NaN;
+    }
+
     private void ensureRenderState() {
         if (mRenderState == null) {
             mRenderState = new RenderState();
@@ -433,6 +1200,41 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
         return getDecoratedBottom(view) + params.bottomMargin;
     }
 
+    private int getCellSize() {
+        return getWidth() / columns;
+    }
+
+    /**
+     * @return row index that is up to date with the adapter
+     */
+    private RowIndex getRowIndex() {
+        mRowIndex.resolve(getItemCount());
+        return mRowIndex;
+    }
+
+    private int getRowForPosition(int position) {
+        return getRowIndex().getRowForPosition(position);
+    }
+
+    private int getFirstPositionInRow(int row) {
+        return getRowIndex().getFirstPositionInRow(row);
+    }
+
+    private int getLastPositionInRow(int row) {
+        return getRowIndex().getLastPositionInRow(row);
+    }
+
+    private int getRowCount() {
+        return getRowIndex().getRowCount();
+    }
+
+    /**
+     * @return height available for children between paddings
+     */
+    private int getVerticalSpace() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
     private int getStart() {
         return 0;
     }
@@ -441,6 +1243,263 @@ public class GridLayoutManager extends RecyclerView.LayoutManager {
         return getHeight();
     }
 
+    /**
+     * Smooth scroller that knows in which direction a position is from the current rows.
+     */
+    private class GridSmoothScroller extends LinearSmoothScroller {
+
+        GridSmoothScroller(Context context) {
+            super(context);
+        }
+
+        @Override
+        public PointF computeScrollVectorForPosition(int targetPosition) {
+            return GridLayoutManager.this.computeScrollVectorForPosition(targetPosition);
+        }
+    }
+
+    /**
+     * Creates and binds views of the rows that are about to scroll into the viewport.
+     *
+     * Work is done in {@link android.os.MessageQueue.IdleHandler#queueIdle()}, i.e. when the main thread
+     * has nothing else to do between frames, and is limited by {@link #mPrefetchBudgetNs} per frame.
+     * Bound views are handed back to the recycler with {@link android.support.v7.widget.RecyclerView.Recycler#recycleView(android.view.View)}
+     * which puts them into the first level view cache - {@link android.support.v7.widget.RecyclerView.Recycler#getViewForPosition(int)}
+     * returns them later without rebinding.
+     */
+    private class PrefetchTask implements MessageQueue.IdleHandler {
+
+        private RecyclerView.Recycler recycler;
+
+        /**
+         * Velocity of the last scroll in pixels per second, signed with the scroll direction.
+         */
+        private float velocity;
+
+        private long lastScrollNs;
+
+        /**
+         * Time spent on prefetch since the last scroll frame.
+         */
+        private long frameSpentNs;
+
+        /**
+         * Next adapter position to prefetch.
+         */
+        private int nextPosition = RecyclerView.NO_POSITION;
+
+        /**
+         * Position where prefetch stops, exclusive.
+         */
+        private int endPosition = RecyclerView.NO_POSITION;
+
+        private int itemDirection;
+
+        private boolean queued;
+
+        void onScrolled(RecyclerView.Recycler recycler, int layoutDirection, int scrolled) {
+            this.recycler = recycler;
+            final long now = System.nanoTime();
+            final long dt = now - lastScrollNs;
+            final float instantVelocity = scrolled * (float) TimeUnit.SECONDS.toNanos(1) / dt;
+            if (dt > 0 && dt < VELOCITY_RESET_NS && Math.signum(instantVelocity) == Math.signum(velocity)) {
+                velocity = (velocity + instantVelocity) / 2;
+            } else if (dt > 0 && dt < VELOCITY_RESET_NS) {
+                velocity = instantVelocity;
+            } else {
+                velocity = 0;
+            }
+            lastScrollNs = now;
+            // new frame - new budget
+            frameSpentNs = 0;
+
+            if (getChildCount() == 0) {
+                return;
+            }
+            final int direction = layoutDirection == RenderState.LAYOUT_END
+                    ? RenderState.ITEM_DIRECTION_TAIL : RenderState.ITEM_DIRECTION_HEAD;
+            final View edgeChild = direction == RenderState.ITEM_DIRECTION_TAIL
+                    ? getChildClosestToEnd() : getChildClosestToStart();
+            final int firstPosition = getPosition(edgeChild) + direction;
+            if (firstPosition < 0 || firstPosition >= getItemCount()) {
+                return;
+            }
+            final int rows = rowsToPrefetch();
+            final int firstRow = getRowForPosition(firstPosition);
+            final int end = direction == RenderState.ITEM_DIRECTION_TAIL
+                    ? getFirstPositionInRow(firstRow + rows)
+                    : getFirstPositionInRow(Math.max(0, firstRow - rows + 1)) - 1;
+
+            if (direction != itemDirection || !isBetween(firstPosition, nextPosition, end)) {
+                nextPosition = firstPosition;
+            }
+            itemDirection = direction;
+            endPosition = end;
+
+            if (nextPosition != endPosition && !queued) {
+                queued = true;
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+
+        /**
+         * @return number of rows we can reach within {@link #PREFETCH_LOOKAHEAD_NS} at the current velocity
+         */
+        private int rowsToPrefetch() {
+            final int cellSize = getCellSize();
+            if (cellSize <= 0) {
+                return 0;
+            }
+            final float lookahead = Math.abs(velocity) * PREFETCH_LOOKAHEAD_NS / TimeUnit.SECONDS.toNanos(1);
+            final int rows = (int) Math.ceil(lookahead / cellSize);
+            return Math.max(1, Math.min(MAX_PREFETCH_ROWS, rows));
+        }
+
+        private boolean isBetween(int from, int position, int to) {
+            return from <= to ? position >= from && position <= to : position <= from && position >= to;
+        }
+
+        @Override
+        public boolean queueIdle() {
+            if (!canPrefetch()) {
+                queued = false;
+                return false;
+            }
+            long start = System.nanoTime();
+            while (nextPosition != endPosition && frameSpentNs < mPrefetchBudgetNs) {
+                if (nextPosition < 0 || nextPosition >= getItemCount()) {
+                    nextPosition = endPosition;
+                    break;
+                }
+                // attached views are already bound, asking recycler for them would create a duplicate
+                if (findViewByPosition(nextPosition) == null) {
+                    View view = recycler.getViewForPosition(nextPosition);
+                    recycler.recycleView(view);
+                    mMetrics.onViewPrefetched();
+                }
+                nextPosition += itemDirection;
+
+                final long now = System.nanoTime();
+                frameSpentNs += now - start;
+                start = now;
+            }
+            // either done or out of budget for this frame - next scroll frame will queue us again
+            queued = false;
+            return false;
+        }
+
+        private boolean canPrefetch() {
+            // pending layout means adapter positions might be stale
+            return recycler != null && mRecyclerView != null && !mRecyclerView.isLayoutRequested()
+                    && getChildCount() > 0;
+        }
+
+        /**
+         * Forgets prefetch progress, e.g. after layout when positions might have changed.
+         */
+        void reset() {
+            nextPosition = RecyclerView.NO_POSITION;
+            endPosition = RecyclerView.NO_POSITION;
+            itemDirection = 0;
+        }
+
+        void cancel() {
+            reset();
+            if (queued) {
+                Looper.myQueue().removeIdleHandler(this);
+                queued = false;
+            }
+            recycler = null;
+            velocity = 0;
+        }
+    }
+
+    /**
+     * Layout params that remember for which state of the layout manager the child was measured.
+     */
+    public static class LayoutParams extends RecyclerView.LayoutParams {
+
+        /**
+         * Value of {@link #mMeasureGeneration} the child was measured with, 0 if it was never measured.
+         * Cell size itself is kept in {@link #width} and {@link #height}.
+         */
+        int mMeasureGeneration;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(ViewGroup.MarginLayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+
+        public LayoutParams(RecyclerView.LayoutParams source) {
+            super(source);
+        }
+    }
+
+    /**
+     * Scroll position of the layout manager: adapter position of the first item of the first visible row
+     * and the distance between the top padding and the start of that row.
+     */
+    static class SavedState implements Parcelable {
+
+        int mAnchorPosition = RecyclerView.NO_POSITION;
+
+        int mAnchorOffset = INVALID_OFFSET;
+
+        SavedState() {
+        }
+
+        SavedState(Parcel in) {
+            mAnchorPosition = in.readInt();
+            mAnchorOffset = in.readInt();
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeInt(mAnchorPosition);
+            dest.writeInt(mAnchorOffset);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * Provides number of columns an item occupies.
+     */
+    public static abstract class SpanSizeLookup {
+
+        /**
+         * @param position adapter position of the item
+         * @return number of columns the item occupies, between 1 and the number of columns of the grid
+         */
+        public abstract int getSpanSize(int position);
+    }
+
     /**
      * Helper class that keeps temporary state while {@link android.support.v7.widget.RecyclerView.LayoutManager} is filling out the empty
      * space.
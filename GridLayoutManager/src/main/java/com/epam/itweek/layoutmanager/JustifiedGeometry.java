@@ -0,0 +1,182 @@
+package com.epam.itweek.layoutmanager;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed geometry of justified rows: items keep their aspect ratios, all items of a row have
+ * the same height and every row except the last one is stretched to the full width.
+ *
+ * Geometry is kept in flat int arrays - horizontal bounds per item and vertical bounds per row -
+ * so that it is cheap to keep around for large feeds and layout only has to read it.
+ * Instances are immutable and can be safely calculated on a background thread.
+ */
+class JustifiedGeometry {
+
+    /**
+     * Aspect ratios are clamped to this range so that a single panorama can't take the whole row
+     * and a very tall photo does not become a thin stripe.
+     */
+    private static final float MIN_ASPECT_RATIO = 0.25f;
+
+    private static final float MAX_ASPECT_RATIO = 4f;
+
+    final int width;
+
+    final int itemCount;
+
+    final int rowCount;
+
+    final int contentHeight;
+
+    /**
+     * Left edge of every item relative to the left edge of the content.
+     */
+    private final int[] itemLefts;
+
+    private final int[] itemWidths;
+
+    /**
+     * Adapter position of the first item of every row.
+     */
+    private final int[] rowStarts;
+
+    private final int[] rowTops;
+
+    private final int[] rowHeights;
+
+    private JustifiedGeometry(int width, int itemCount, int rowCount, int[] itemLefts, int[] itemWidths,
+                              int[] rowStarts, int[] rowTops, int[] rowHeights) {
+        this.width = width;
+        this.itemCount = itemCount;
+        this.rowCount = rowCount;
+        this.itemLefts = itemLefts;
+        this.itemWidths = itemWidths;
+        this.rowStarts = rowStarts;
+        this.rowTops = rowTops;
+        this.rowHeights = rowHeights;
+        this.contentHeight = rowCount == 0 ? 0 : rowTops[rowCount - 1] + rowHeights[rowCount - 1];
+    }
+
+    /**
+     * Breaks items into rows greedily: items are added to a row until the row, scaled to the target height,
+     * is at least as wide as the container. Then the row is scaled down to fit the width exactly.
+     *
+     * @param aspectRatios    width to height ratio of every item
+     * @param width           width of the content
+     * @param targetRowHeight height of a row before it is justified
+     */
+    static JustifiedGeometry calculate(float[] aspectRatios, int width, int targetRowHeight) {
+        final int itemCount = aspectRatios.length;
+        final int[] itemLefts = new int[itemCount];
+        final int[] itemWidths = new int[itemCount];
+        int[] rowStarts = new int[16];
+        int[] rowTops = new int[16];
+        int[] rowHeights = new int[16];
+        int rowCount = 0;
+        int top = 0;
+
+        int rowStart = 0;
+        float rowRatio = 0;
+        for (int position = 0; position < itemCount; position++) {
+            rowRatio += clampRatio(aspectRatios[position]);
+            final boolean lastItem = position == itemCount - 1;
+            if (rowRatio * targetRowHeight < width && !lastItem) {
+                continue;
+            }
+            final boolean full = rowRatio * targetRowHeight >= width;
+            final int rowHeight = full ? Math.max(1, Math.round(width / rowRatio)) : targetRowHeight;
+
+            int left = 0;
+            float exactLeft = 0;
+            for (int i = rowStart; i <= position; i++) {
+                exactLeft += clampRatio(aspectRatios[i]) * rowHeight;
+                // last item of a full row takes the rounding error so that the row ends exactly at the edge
+                final int right = full && i == position ? width : Math.min(width, Math.round(exactLeft));
+                itemLefts[i] = left;
+                itemWidths[i] = right - left;
+                left = right;
+            }
+
+            if (rowCount == rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rowCount * 2);
+                rowTops = Arrays.copyOf(rowTops, rowCount * 2);
+                rowHeights = Arrays.copyOf(rowHeights, rowCount * 2);
+            }
+            rowStarts[rowCount] = rowStart;
+            rowTops[rowCount] = top;
+            rowHeights[rowCount] = rowHeight;
+            rowCount++;
+            top += rowHeight;
+
+            rowStart = position + 1;
+            rowRatio = 0;
+        }
+        return new JustifiedGeometry(width, itemCount, rowCount, itemLefts, itemWidths, rowStarts, rowTops,
+                rowHeights);
+    }
+
+    private static float clampRatio(float ratio) {
+        if (Float.isNaN(ratio)) {
+            return 1f;
+        }
+        return Math.max(MIN_ASPECT_RATIO, Math.min(MAX_ASPECT_RATIO, ratio));
+    }
+
+    /**
+     * @return the row that contains the given vertical coordinate of the content
+     */
+    int findRowAt(int y) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (rowTops[mid] <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the row that contains the given adapter position
+     */
+    int findRowOf(int position) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (rowStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    int getFirstPositionInRow(int row) {
+        return rowStarts[row];
+    }
+
+    int getLastPositionInRow(int row) {
+        return row + 1 < rowCount ? rowStarts[row + 1] - 1 : itemCount - 1;
+    }
+
+    int getRowTop(int row) {
+        return rowTops[row];
+    }
+
+    int getRowHeight(int row) {
+        return rowHeights[row];
+    }
+
+    int getItemLeft(int position) {
+        return itemLefts[position];
+    }
+
+    int getItemWidth(int position) {
+        return itemWidths[position];
+    }
+}
@@ -0,0 +1,317 @@
+package com.epam.itweek.layoutmanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Layout manager that shows items in justified rows: items keep their aspect ratios and every row
+ * is stretched to the full width.
+ *
+ * Row breaks and cell bounds are calculated on a background thread into {@link JustifiedGeometry}
+ * and published to the main thread. Layout and scrolling only read precomputed geometry, so their cost
+ * does not depend on the number of items. Until geometry for the current width is ready nothing is shown.
+ */
+public class JustifiedLayoutManager extends RecyclerView.LayoutManager
+        implements CellSizeProvider, VisibleRangeProvider {
+
+    private static final ExecutorService GEOMETRY_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "JustifiedGeometry");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final int targetRowHeight;
+
+    private float[] aspectRatios;
+
+    private JustifiedGeometry geometry;
+
+    /**
+     * Incremented for every geometry request - older requests are skipped and their results are dropped.
+     */
+    private volatile int geometryGeneration;
+
+    /**
+     * Width of the last requested geometry.
+     */
+    private int requestedWidth;
+
+    /**
+     * Distance in pixels between the start of the content and the top padding.
+     */
+    private int scrollOffset;
+
+    public JustifiedLayoutManager(int targetRowHeight) {
+        this.targetRowHeight = targetRowHeight;
+    }
+
+    /**
+     * Sets aspect ratios of items and starts calculation of the geometry in background.
+     * Has to be called again whenever the data set changes.
+     *
+     * @param aspectRatios width to height ratio of every item in the adapter
+     */
+    public void setAspectRatios(float[] aspectRatios) {
+        this.aspectRatios = aspectRatios;
+        requestGeometry(getContentWidth());
+    }
+
+    private void requestGeometry(final int width) {
+        final int generation = ++geometryGeneration;
+        requestedWidth = width;
+        final float[] ratios = aspectRatios;
+        if (ratios == null || width <= 0) {
+            return;
+        }
+        GEOMETRY_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != geometryGeneration) {
+                    // a newer request is queued behind this one
+                    return;
+                }
+                final JustifiedGeometry calculated = JustifiedGeometry.calculate(ratios, width, targetRowHeight);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == geometryGeneration) {
+                            publishGeometry(calculated);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces geometry keeping the first visible item at the top.
+     */
+    private void publishGeometry(JustifiedGeometry newGeometry) {
+        if (geometry != null && getChildCount() > 0) {
+            final int firstPosition = Math.min(getPosition(getChildAt(0)), newGeometry.itemCount - 1);
+            scrollOffset = firstPosition < 0 ? 0 : newGeometry.getRowTop(newGeometry.findRowOf(firstPosition));
+        }
+        geometry = newGeometry;
+        requestLayout();
+    }
+
+    @Override
+    public int getCellWidth(int position) {
+        return isGeometryReady() && position < geometry.itemCount ? geometry.getItemWidth(position) : 0;
+    }
+
+    @Override
+    public int getCellHeight(int position) {
+        return isGeometryReady() && position < geometry.itemCount
+                ? geometry.getRowHeight(geometry.findRowOf(position)) : 0;
+    }
+
+    /**
+     * Geometry knows every row, so this works for items that are not attached yet.
+     */
+    @Override
+    public int findFirstVisibleItemPosition() {
+        if (getChildCount() == 0 || !isGeometryReady() || geometry.rowCount == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        return Math.min(getItemCount() - 1, geometry.getFirstPositionInRow(getFirstVisibleRow()));
+    }
+
+    @Override
+    public int findLastVisibleItemPosition() {
+        if (getChildCount() == 0 || !isGeometryReady() || geometry.rowCount == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        return Math.min(getItemCount() - 1, geometry.getLastPositionInRow(getLastVisibleRow()));
+    }
+
+    @Override
+    public int getRowDistanceFromViewport(int position) {
+        if (!isGeometryReady() || geometry.rowCount == 0) {
+            return 0;
+        }
+        final int row = geometry.findRowOf(position);
+        final int firstVisibleRow = getFirstVisibleRow();
+        if (row < firstVisibleRow) {
+            return firstVisibleRow - row;
+        }
+        return Math.max(0, row - getLastVisibleRow());
+    }
+
+    private int getFirstVisibleRow() {
+        return geometry.findRowAt(scrollOffset);
+    }
+
+    private int getLastVisibleRow() {
+        return geometry.findRowAt(scrollOffset + Math.max(1, getVerticalSpace()) - 1);
+    }
+
+    @Override
+    public RecyclerView.LayoutParams generateDefaultLayoutParams() {
+        return new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    public boolean canScrollVertically() {
+        return true;
+    }
+
+    @Override
+    public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        final int width = getContentWidth();
+        if (width != requestedWidth) {
+            requestGeometry(width);
+        }
+        detachAndScrapAttachedViews(recycler);
+        if (!isGeometryReady()) {
+            return;
+        }
+        scrollOffset = Math.max(0, Math.min(getMaxScrollOffset(), scrollOffset));
+        final int itemCount = Math.min(state.getItemCount(), geometry.itemCount);
+        if (itemCount == 0) {
+            return;
+        }
+        fillTowardsEnd(recycler, geometry.findRowAt(scrollOffset), itemCount);
+    }
+
+    @Override
+    public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (getChildCount() == 0 || dy == 0 || !isGeometryReady()) {
+            return 0;
+        }
+        final int newScrollOffset = Math.max(0, Math.min(getMaxScrollOffset(), scrollOffset + dy));
+        final int scrolled = newScrollOffset - scrollOffset;
+        if (scrolled == 0) {
+            return 0;
+        }
+        scrollOffset = newScrollOffset;
+        offsetChildrenVertical(-scrolled);
+        recycleInvisibleRows(recycler);
+        fillGaps(recycler, state);
+        return scrolled;
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        if (isGeometryReady() && position >= 0 && position < geometry.itemCount) {
+            // geometry knows where every row is - no need to layout anything in between
+            scrollOffset = geometry.getRowTop(geometry.findRowOf(position));
+            requestLayout();
+        }
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        return getChildCount() == 0 ? 0 : scrollOffset;
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        return getChildCount() == 0 ? 0 : getVerticalSpace();
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        return getChildCount() == 0 ? 0 : geometry.contentHeight;
+    }
+
+    /**
+     * Adds rows that scrolled into the viewport at both ends.
+     */
+    private void fillGaps(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        final int itemCount = Math.min(state.getItemCount(), geometry.itemCount);
+        if (getChildCount() == 0) {
+            // everything was recycled - happens on very large scroll steps
+            fillTowardsEnd(recycler, geometry.findRowAt(scrollOffset), itemCount);
+            return;
+        }
+        int row = geometry.findRowOf(getPosition(getChildAt(0))) - 1;
+        while (row >= 0 && toLayoutCoordinate(geometry.getRowTop(row) + geometry.getRowHeight(row)) > 0) {
+            layoutRow(recycler, row, itemCount, true);
+            row--;
+        }
+        fillTowardsEnd(recycler, geometry.findRowOf(getPosition(getChildAt(getChildCount() - 1))) + 1, itemCount);
+    }
+
+    private void fillTowardsEnd(RecyclerView.Recycler recycler, int row, int itemCount) {
+        while (row < geometry.rowCount && geometry.getFirstPositionInRow(row) < itemCount
+                && toLayoutCoordinate(geometry.getRowTop(row)) < getHeight()) {
+            layoutRow(recycler, row, itemCount, false);
+            row++;
+        }
+    }
+
+    /**
+     * Lays out a row using precomputed bounds of its items.
+     *
+     * @param prepend true to add row before all attached children, false to add it after them
+     */
+    private void layoutRow(RecyclerView.Recycler recycler, int row, int itemCount, boolean prepend) {
+        final int top = toLayoutCoordinate(geometry.getRowTop(row));
+        final int bottom = top + geometry.getRowHeight(row);
+        final int lastPosition = Math.min(geometry.getLastPositionInRow(row), itemCount - 1);
+        int index = 0;
+        for (int position = geometry.getFirstPositionInRow(row); position <= lastPosition; position++) {
+            final View view = recycler.getViewForPosition(position);
+            if (prepend) {
+                addView(view, index++);
+            } else {
+                addView(view);
+            }
+            final int left = getPaddingLeft() + geometry.getItemLeft(position);
+            final int right = left + geometry.getItemWidth(position);
+            final RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) view.getLayoutParams();
+            params.width = right - left - params.leftMargin - params.rightMargin;
+            params.height = bottom - top - params.topMargin - params.bottomMargin;
+            measureChildWithMargins(view, 0, 0);
+            layoutDecorated(view, left + params.leftMargin, top + params.topMargin,
+                    right - params.rightMargin, bottom - params.bottomMargin);
+        }
+    }
+
+    /**
+     * Rows are removed as a whole - all items of a row share vertical bounds.
+     */
+    private void recycleInvisibleRows(RecyclerView.Recycler recycler) {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            if (getDecoratedBottom(child) <= 0 || getDecoratedTop(child) >= getHeight()) {
+                removeAndRecycleViewAt(i, recycler);
+            }
+        }
+    }
+
+    private boolean isGeometryReady() {
+        return geometry != null && geometry.width == getContentWidth();
+    }
+
+    private int toLayoutCoordinate(int contentY) {
+        return contentY - scrollOffset + getPaddingTop();
+    }
+
+    private int getMaxScrollOffset() {
+        return Math.max(0, geometry.contentHeight - getVerticalSpace());
+    }
+
+    private int getContentWidth() {
+        return getWidth() - getPaddingLeft() - getPaddingRight();
+    }
+
+    private int getVerticalSpace() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+}
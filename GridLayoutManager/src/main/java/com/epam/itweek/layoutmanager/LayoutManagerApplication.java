@@ -0,0 +1,144 @@
+package com.epam.itweek.layoutmanager;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+
+import com.epam.itweek.layoutmanager.adapter.BitmapPool;
+import com.epam.itweek.layoutmanager.adapter.CellRequestHandler;
+import com.epam.itweek.layoutmanager.adapter.CountingCache;
+import com.epam.itweek.layoutmanager.adapter.PoolingLruCache;
+import com.squareup.picasso.Picasso;
+
+import static android.content.Context.ACTIVITY_SERVICE;
+import static android.content.pm.ApplicationInfo.FLAG_LARGE_HEAP;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.HONEYCOMB;
+
+/**
+ * Owns the image pipeline shared by all screens: a single {@link Picasso} instance
+ * with one bounded memory cache and one executor. The default executor is kept - it runs requests
+ * in the order of their {@link Picasso.Priority} on background priority threads.
+ *
+ * It lives as long as the process, so decoded bitmaps survive activity recreation -
+ * after a rotation the grid is drawn from memory instead of being downloaded and decoded again.
+ *
+ * Bitmaps evicted from the memory cache and no longer shown go to a {@link BitmapPool}
+ * and grid cells are decoded into them.
+ *
+ * The memory cache is sized by the heap first and by the working set of the grid once it is laid out,
+ * see {@link #fitMemoryCache(Context, long)}. It gives memory back in stages when the system asks to trim.
+ */
+public class LayoutManagerApplication extends Application {
+
+    private Picasso picasso;
+
+    /**
+     * Pool takes this share of the memory cache size on top of it.
+     */
+    private static final int BITMAP_POOL_SHARE = 8;
+
+    /**
+     * Memory cache holds this many working sets of the grid, so scrolling back a screen or two is served from memory.
+     */
+    private static final int WORKING_SET_MULTIPLE = 2;
+
+    private CountingCache imageCache;
+
+    private PoolingLruCache memoryCache;
+
+    private BitmapPool bitmapPool;
+
+    /**
+     * Upper bound of the memory cache size given by the heap.
+     */
+    private int maxMemoryCacheSize;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        maxMemoryCacheSize = calculateMemoryCacheSize(this);
+        bitmapPool = new BitmapPool(maxMemoryCacheSize / BITMAP_POOL_SHARE);
+        memoryCache = new PoolingLruCache(maxMemoryCacheSize, bitmapPool);
+        imageCache = new CountingCache(memoryCache);
+        picasso = new Picasso.Builder(this)
+                .addRequestHandler(new CellRequestHandler(this, bitmapPool))
+                .indicatorsEnabled(true)
+//                .loggingEnabled(true)
+                .memoryCache(imageCache)
+                .build();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        memoryCache.trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // pooled bitmaps are only a speed up, they go before anything else
+            bitmapPool.clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        memoryCache.clear();
+        bitmapPool.clear();
+    }
+
+    /**
+     * @return image pipeline of the application the context belongs to
+     */
+    public static Picasso getPicasso(Context context) {
+        return ((LayoutManagerApplication) context.getApplicationContext()).picasso;
+    }
+
+    /**
+     * @return memory cache of the image pipeline with hit and miss counters per image
+     */
+    public static CountingCache getImageCache(Context context) {
+        return ((LayoutManagerApplication) context.getApplicationContext()).imageCache;
+    }
+
+    /**
+     * @return memory cache of the image pipeline with its statistics and previews of evicted images
+     */
+    public static PoolingLruCache getMemoryCache(Context context) {
+        return ((LayoutManagerApplication) context.getApplicationContext()).memoryCache;
+    }
+
+    /**
+     * Sizes the memory cache to the working set of a screen: {@link #WORKING_SET_MULTIPLE} times the bytes of
+     * images it keeps bound and prefetched, but no more than the heap allows.
+     *
+     * @param workingSetBytes bytes of pixels of the images a screen holds while scrolling
+     */
+    public static void fitMemoryCache(Context context, long workingSetBytes) {
+        if (workingSetBytes <= 0) {
+            // grid is not laid out yet
+            return;
+        }
+        final LayoutManagerApplication application = (LayoutManagerApplication) context.getApplicationContext();
+        application.memoryCache.setMaxSize(
+                (int) Math.min(application.maxMemoryCacheSize, workingSetBytes * WORKING_SET_MULTIPLE));
+    }
+
+    /**
+     * @return pool of bitmaps not used by the memory cache or views, for decoding into
+     */
+    public static BitmapPool getBitmapPool(Context context) {
+        return ((LayoutManagerApplication) context.getApplicationContext()).bitmapPool;
+    }
+
+    static int calculateMemoryCacheSize(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(ACTIVITY_SERVICE);
+        boolean largeHeap = (context.getApplicationInfo().flags & FLAG_LARGE_HEAP) != 0;
+        int memoryClass = am.getMemoryClass();
+        if (largeHeap && SDK_INT >= HONEYCOMB) {
+            memoryClass = am.getLargeMemoryClass();
+        }
+        // Target ~25% of the available heap - it is the only bitmap cache of the process.
+        return 1024 * 1024 * memoryClass / 4;
+    }
+}
@@ -0,0 +1,171 @@
+package com.epam.itweek.layoutmanager;
+
+/**
+ * Primitive counters of the layout hot path: rows laid out, views created, bound and recycled,
+ * measurements skipped, time spent in {@code fill(...)} and {@code layoutRow(...)}, pixels scrolled without layout.
+ *
+ * Counters are plain fields updated on the main thread, so recording does not allocate and costs
+ * a couple of additions - cheap enough to keep enabled in production builds. When disabled,
+ * nothing is recorded and {@link System#nanoTime()} is not called at all.
+ * Values are read with getters, e.g. to be sent with performance reports, and cleared with {@link #reset()}.
+ */
+public class LayoutMetrics {
+
+    private boolean enabled;
+
+    private long rowsLaidOut;
+
+    private long viewsCreated;
+
+    private long viewsBound;
+
+    private long viewsRecycled;
+
+    private long viewsPrefetched;
+
+    private long measuresSkipped;
+
+    private long fillCount;
+
+    private long fillTimeNs;
+
+    private long layoutRowTimeNs;
+
+    private long scrolledPx;
+
+    private long freeScrolledPx;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return current time to be passed to one of timing methods or 0 if metrics are disabled
+     */
+    long startTiming() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void onFill(long startNs) {
+        if (enabled) {
+            fillCount++;
+            fillTimeNs += System.nanoTime() - startNs;
+        }
+    }
+
+    void onRowLaidOut(long startNs) {
+        if (enabled) {
+            rowsLaidOut++;
+            layoutRowTimeNs += System.nanoTime() - startNs;
+        }
+    }
+
+    void onViewsRecycled(int count) {
+        if (enabled) {
+            viewsRecycled += count;
+        }
+    }
+
+    void onViewPrefetched() {
+        if (enabled) {
+            viewsPrefetched++;
+        }
+    }
+
+    void onMeasureSkipped() {
+        if (enabled) {
+            measuresSkipped++;
+        }
+    }
+
+    /**
+     * @param scrolled   total number of pixels scrolled
+     * @param freeScroll number of them that were covered by translating already laid out children
+     */
+    void onScrolled(int scrolled, int freeScroll) {
+        if (enabled) {
+            scrolledPx += scrolled;
+            freeScrolledPx += freeScroll;
+        }
+    }
+
+    /**
+     * To be called by an adapter from {@code onCreateViewHolder(...)}.
+     */
+    public void onViewCreated() {
+        if (enabled) {
+            viewsCreated++;
+        }
+    }
+
+    /**
+     * To be called by an adapter from {@code onBindViewHolder(...)}.
+     */
+    public void onViewBound() {
+        if (enabled) {
+            viewsBound++;
+        }
+    }
+
+    public long getRowsLaidOut() {
+        return rowsLaidOut;
+    }
+
+    public long getViewsCreated() {
+        return viewsCreated;
+    }
+
+    public long getViewsBound() {
+        return viewsBound;
+    }
+
+    public long getViewsRecycled() {
+        return viewsRecycled;
+    }
+
+    public long getViewsPrefetched() {
+        return viewsPrefetched;
+    }
+
+    public long getMeasuresSkipped() {
+        return measuresSkipped;
+    }
+
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    public long getFillTimeNs() {
+        return fillTimeNs;
+    }
+
+    public long getLayoutRowTimeNs() {
+        return layoutRowTimeNs;
+    }
+
+    public long getScrolledPx() {
+        return scrolledPx;
+    }
+
+    public long getFreeScrolledPx() {
+        return freeScrolledPx;
+    }
+
+    public void reset() {
+        rowsLaidOut = 0;
+        viewsCreated = 0;
+        viewsBound = 0;
+        viewsRecycled = 0;
+        viewsPrefetched = 0;
+        measuresSkipped = 0;
+        fillCount = 0;
+        fillTimeNs = 0;
+        layoutRowTimeNs = 0;
+        scrolledPx = 0;
+        freeScrolledPx = 0;
+    }
+}
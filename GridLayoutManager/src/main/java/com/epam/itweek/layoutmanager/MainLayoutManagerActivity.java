@@ -2,46 +2,80 @@ package com.epam.itweek.layoutmanager;
 
 import android.animation.ValueAnimator;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.os.Bundle;
 import android.support.v7.widget.DefaultItemAnimator;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewAnimationUtils;
 import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
-import com.epam.itweek.layoutmanager.adapter.Config;
+import com.epam.itweek.layoutmanager.adapter.FiveHundredPxApi;
 import com.epam.itweek.layoutmanager.adapter.FiveHundredPxRecyclerAdapter;
-import com.epam.itweek.layoutmanager.adapter.FiveHundredPxService;
+import com.epam.itweek.layoutmanager.adapter.ImagePrefetcher;
+import com.epam.itweek.layoutmanager.adapter.PagedPhotoSource;
+import com.epam.itweek.layoutmanager.adapter.PhotoColumns;
+import com.epam.itweek.layoutmanager.adapter.PhotoMetadataStore;
+import com.epam.itweek.layoutmanager.adapter.PauseOnFlingScrollListener;
+import com.epam.itweek.layoutmanager.adapter.ViewPoolWarmer;
 
-import java.util.List;
+import java.io.File;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
-import retrofit.Callback;
-import retrofit.RequestInterceptor;
-import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.client.Response;
 
 
-public class MainLayoutManagerActivity extends Activity {
+public class MainLayoutManagerActivity extends Activity implements PagedPhotoSource.Listener {
 
-    public static final String URL_FIVE_HUNDRED_PX = "https://api.500px.com";
-    public static final String PARAM_CONSUMER_KEY = "consumer_key";
     private static final String TAG = MainLayoutManagerActivity.class.getSimpleName();
     public static final int NUMBER_OF_COLUMNS = 3;
     public static final int REVEAL_DURATION = 500;
+    // images are not loaded while the grid flings faster than this number of screens per second
+    private static final int PAUSE_IMAGES_SCREENS_PER_SECOND = 4;
+    // next page is requested when the last visible row is this number of rows away from the end
+    private static final int PAGE_PREFETCH_ROWS = 10;
+    // the adapter has a single view type
+    private static final int ITEM_VIEW_TYPE = 0;
     // very quick and simple and dirty caching across app/screen restarts
     // we can't do this in production of course
-    private static List<FiveHundredPxService.Photo> cachedPhotos;
+    private static PagedPhotoSource photoSource;
 
     @InjectView(android.R.id.list) RecyclerView recyclerView;
 
     @InjectView(android.R.id.progress) ProgressBar progressBar;
 
+    private GridLayoutManager gridLayoutManager;
+
+    private JustifiedLayoutManager justifiedLayoutManager;
+
+    private PhotoColumns photos;
+
+    private FiveHundredPxRecyclerAdapter adapter;
+
+    private PauseOnFlingScrollListener pauseOnFlingListener;
+
+    private ImagePrefetcher imagePrefetcher;
+
+    private ViewPoolWarmer viewPoolWarmer;
+
+    private boolean aspectRatiosUpdatePending;
+
+    /**
+     * A refresh notifies about every move separately - aspect ratios are collected once after all of them.
+     */
+    private final Runnable updateAspectRatios = new Runnable() {
+        @Override
+        public void run() {
+            aspectRatiosUpdatePending = false;
+            justifiedLayoutManager.setAspectRatios(getAspectRatios(photos));
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,50 +83,170 @@ public class MainLayoutManagerActivity extends Activity {
         setContentView(R.layout.activity_main_layout_manager);
         ButterKnife.inject(this);
         recyclerView.setHasFixedSize(true);
-        // we always recycle at least one row, so keep the last recycled row in the first level cache
-        recyclerView.setItemViewCacheSize(NUMBER_OF_COLUMNS);
-        recyclerView.setLayoutManager(new GridLayoutManager(NUMBER_OF_COLUMNS));
+        gridLayoutManager = new GridLayoutManager(NUMBER_OF_COLUMNS);
+        // bind upcoming rows between frames instead of inside the scroll frame
+        gridLayoutManager.setPrefetchEnabled(true);
+        gridLayoutManager.getMetrics().setEnabled(true);
+        justifiedLayoutManager = new JustifiedLayoutManager(getResources().getDimensionPixelSize(R.dimen.justified_row_height));
+        recyclerView.setLayoutManager(gridLayoutManager);
+        recyclerView.addOnItemTouchListener(new FastScrollTouchListener(gridLayoutManager));
         recyclerView.setItemAnimator(new DefaultItemAnimator());
+        // the pool can be given to other grids showing the same items
+        viewPoolWarmer = new ViewPoolWarmer(new RecyclerView.RecycledViewPool());
+        recyclerView.setRecycledViewPool(viewPoolWarmer.getPool());
 
-        if (cachedPhotos == null) {
-            fetchPhotos();
+        if (photoSource == null) {
+            photoSource = new PagedPhotoSource(FiveHundredPxApi.create(FiveHundredPxApi.URL_FIVE_HUNDRED_PX,
+                    new File(getCacheDir(), "http")));
+            photoSource.setPrefetchDistance(PAGE_PREFETCH_ROWS * NUMBER_OF_COLUMNS);
+            // photos of the previous run are shown right away and refreshed in background
+            photoSource.setStore(new PhotoMetadataStore(getCacheDir()));
+        }
+        photoSource.setListener(this);
+        if (photoSource.getPhotos().size() == 0) {
+            photoSource.start();
         } else {
-            setup500pxAdapter(cachedPhotos);
+            setup500pxAdapter(photoSource.getPhotos());
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            final VisibleRangeProvider visibleRange = getVisibleRange();
+            photoSource.dropFarPages(visibleRange.findFirstVisibleItemPosition(),
+                    visibleRange.findLastVisibleItemPosition());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        photoSource.setListener(null);
+        recyclerView.removeCallbacks(updateAspectRatios);
+        viewPoolWarmer.cancel();
+        if (pauseOnFlingListener != null) {
+            pauseOnFlingListener.resume();
+            imagePrefetcher.cancel();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_layout_manager, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_justified) {
+            item.setChecked(!item.isChecked());
+            recyclerView.setLayoutManager(item.isChecked() ? justifiedLayoutManager : gridLayoutManager);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_refresh) {
+            photoSource.refresh();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public void onPhotosInserted(int positionStart, int itemCount) {
+        if (adapter == null) {
+            setup500pxAdapter(photoSource.getPhotos());
+            return;
+        }
+        scheduleAspectRatiosUpdate();
+        adapter.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onPhotosChanged(int positionStart, int itemCount) {
+        if (adapter != null) {
+            scheduleAspectRatiosUpdate();
+            adapter.notifyItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onPhotosRemoved(int positionStart, int itemCount) {
+        if (adapter != null) {
+            scheduleAspectRatiosUpdate();
+            adapter.notifyItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onPhotoMoved(int fromPosition, int toPosition) {
+        if (adapter != null) {
+            scheduleAspectRatiosUpdate();
+            adapter.notifyItemMoved(fromPosition, toPosition);
         }
     }
 
-    private void fetchPhotos() {
-        RestAdapter restAdapter = new RestAdapter.Builder()
-                .setEndpoint(URL_FIVE_HUNDRED_PX)
-                .setRequestInterceptor(new RequestInterceptor() {
-                    @Override
-                    public void intercept(RequestFacade request) {
-                        request.addQueryParam(PARAM_CONSUMER_KEY, Config.FIVE_HUNDRED_PX_CONSUMER_KEY);
-                    }
-                }).build();
-        FiveHundredPxService service = restAdapter.create(FiveHundredPxService.class);
-        service.getPopularPhotos(new Callback<FiveHundredPxService.PhotosResponse>() {
+    @Override
+    public void onPageFailed(int page, RetrofitError error) {
+        Log.w(TAG, "failed to load page " + page + " of photos list from 500px", error);
+        if (adapter == null) {
+            Toast.makeText(MainLayoutManagerActivity.this, "Failed to get data from the 500px. Please check internet connection and restart demo.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void setup500pxAdapter(PhotoColumns photos) {
+        this.photos = photos;
+        justifiedLayoutManager.setAspectRatios(getAspectRatios(photos));
+        adapter = new FiveHundredPxRecyclerAdapter(photos, this);
+        adapter.setMetrics(gridLayoutManager.getMetrics());
+        recyclerView.setAdapter(adapter);
+        pauseOnFlingListener = new PauseOnFlingScrollListener(LayoutManagerApplication.getPicasso(this), adapter,
+                getResources().getDisplayMetrics().heightPixels * PAUSE_IMAGES_SCREENS_PER_SECOND);
+        // a row of images at a time, visible cells have higher priority anyway
+        imagePrefetcher = new ImagePrefetcher(LayoutManagerApplication.getPicasso(this),
+                LayoutManagerApplication.getImageCache(this), adapter, recyclerView, NUMBER_OF_COLUMNS);
+        // RecyclerView keeps a single scroll listener
+        recyclerView.setOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void success(FiveHundredPxService.PhotosResponse photosResponse, Response response) {
-                cachedPhotos = photosResponse.photos;
-                if (!isFinishing()) {
-                    setup500pxAdapter(photosResponse.photos);
-                }
+            public void onScrollStateChanged(int newState) {
+                pauseOnFlingListener.onScrollStateChanged(newState);
+                imagePrefetcher.onScrollStateChanged(newState);
             }
 
             @Override
-            public void failure(RetrofitError error) {
-                Log.w(TAG, "failed to load photos list from 500px", error);
-                Toast.makeText(MainLayoutManagerActivity.this, "Failed to get data from the 500px. Please check internet connection and restart demo.", Toast.LENGTH_SHORT).show();
+            public void onScrolled(int dx, int dy) {
+                pauseOnFlingListener.onScrolled(dx, dy);
+                imagePrefetcher.onScrolled(dx, dy);
+                final VisibleRangeProvider visibleRange = getVisibleRange();
+                photoSource.onVisibleRangeChanged(visibleRange.findFirstVisibleItemPosition(),
+                        visibleRange.findLastVisibleItemPosition());
             }
         });
+
+        showRecyclerView();
     }
 
-    private void setup500pxAdapter(List<FiveHundredPxService.Photo> photos) {
-        final FiveHundredPxRecyclerAdapter adapter = new FiveHundredPxRecyclerAdapter(photos, this);
-        recyclerView.setAdapter(adapter);
+    /**
+     * @return layout manager attached at the moment - grid or justified
+     */
+    private VisibleRangeProvider getVisibleRange() {
+        return (VisibleRangeProvider) recyclerView.getLayoutManager();
+    }
 
-        showRecyclerView();
+    private void scheduleAspectRatiosUpdate() {
+        if (!aspectRatiosUpdatePending) {
+            aspectRatiosUpdatePending = true;
+            recyclerView.post(updateAspectRatios);
+        }
+    }
+
+    private static float[] getAspectRatios(PhotoColumns photos) {
+        float[] aspectRatios = new float[photos.size()];
+        for (int i = 0; i < aspectRatios.length; i++) {
+            // dimensions are kept when a photo is unloaded, so the layout does not jump
+            aspectRatios[i] = photos.getAspectRatio(i);
+        }
+        return aspectRatios;
     }
 
     private void showRecyclerView() {
@@ -107,6 +261,15 @@ public class MainLayoutManagerActivity extends Activity {
                         progressBar.getTop() + progressBar.getHeight() / 2, 0, radius);
                 reveal.setDuration(REVEAL_DURATION);
                 reveal.start();
+                // the first screen is laid out already, the rest of the views the grid holds while scrolling
+                // is inflated while the main thread idles during the reveal instead of in the first fling
+                viewPoolWarmer.warmUp(adapter, recyclerView, ITEM_VIEW_TYPE,
+                        gridLayoutManager.getMaxViewCount() - recyclerView.getChildCount());
+                // images of those views and of the rows prefetched ahead are what scrolling keeps needing
+                final long cellSize = gridLayoutManager.getCellHeight(0);
+                LayoutManagerApplication.fitMemoryCache(MainLayoutManagerActivity.this,
+                        (gridLayoutManager.getMaxViewCount() + ImagePrefetcher.MAX_PREFETCH_ROWS * NUMBER_OF_COLUMNS)
+                                * cellSize * cellSize * adapter.getBytesPerPixel());
                 recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
                 return true;
             }
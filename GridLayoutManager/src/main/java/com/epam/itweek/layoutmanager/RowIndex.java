@@ -0,0 +1,242 @@
+package com.epam.itweek.layoutmanager;
+
+import java.util.Arrays;
+
+/**
+ * Maps adapter positions to rows of {@link GridLayoutManager} when items may span several columns.
+ *
+ * Span sizes are cached in a primitive array and rows are stored as positions of their first items,
+ * i.e. prefix sums of row lengths. So position -> row is a binary search and row -> first position is
+ * a plain array read.
+ *
+ * Adapter changes only shift the span array and remember the first changed position. Spans of inserted
+ * and updated items are looked up on the next query and rows are packed again starting from the row
+ * that contains the first changed position, or from the row above it when the changed position starts a row -
+ * the changed item may fit into that row now. Rows above are not touched.
+ *
+ * Without a {@link GridLayoutManager.SpanSizeLookup} every item spans a single column and all answers
+ * are simple arithmetic.
+ */
+class RowIndex {
+
+    private static final int UNKNOWN_SPAN = 0;
+
+    private static final int CLEAN = Integer.MAX_VALUE;
+
+    private final int spanCount;
+
+    private GridLayoutManager.SpanSizeLookup spanSizeLookup;
+
+    /**
+     * Span size of every item, {@link #UNKNOWN_SPAN} for items that were not looked up yet.
+     */
+    private int[] spans = new int[0];
+
+    private int itemCount;
+
+    /**
+     * Adapter position of the first item of every row.
+     */
+    private int[] rowStarts = new int[0];
+
+    private int rowCount;
+
+    /**
+     * First position that has changed since rows were packed last time.
+     */
+    private int dirtyFrom = CLEAN;
+
+    private boolean invalid = true;
+
+    RowIndex(int spanCount) {
+        this.spanCount = spanCount;
+    }
+
+    void setSpanSizeLookup(GridLayoutManager.SpanSizeLookup spanSizeLookup) {
+        this.spanSizeLookup = spanSizeLookup;
+        invalidate();
+    }
+
+    GridLayoutManager.SpanSizeLookup getSpanSizeLookup() {
+        return spanSizeLookup;
+    }
+
+    /**
+     * Forces complete rebuild on the next query, e.g. when the whole data set has changed.
+     */
+    void invalidate() {
+        invalid = true;
+    }
+
+    void onItemsInserted(int positionStart, int count) {
+        if (invalid || spanSizeLookup == null) {
+            return;
+        }
+        if (positionStart > itemCount) {
+            invalidate();
+            return;
+        }
+        spans = ensureCapacity(spans, itemCount + count);
+        System.arraycopy(spans, positionStart, spans, positionStart + count, itemCount - positionStart);
+        Arrays.fill(spans, positionStart, positionStart + count, UNKNOWN_SPAN);
+        itemCount += count;
+        dirtyFrom = Math.min(dirtyFrom, positionStart);
+    }
+
+    void onItemsRemoved(int positionStart, int count) {
+        if (invalid || spanSizeLookup == null) {
+            return;
+        }
+        if (positionStart + count > itemCount) {
+            invalidate();
+            return;
+        }
+        System.arraycopy(spans, positionStart + count, spans, positionStart, itemCount - positionStart - count);
+        itemCount -= count;
+        dirtyFrom = Math.min(dirtyFrom, positionStart);
+    }
+
+    void onItemsUpdated(int positionStart, int count) {
+        if (invalid || spanSizeLookup == null) {
+            return;
+        }
+        final int end = Math.min(itemCount, positionStart + count);
+        if (positionStart >= end) {
+            return;
+        }
+        Arrays.fill(spans, positionStart, end, UNKNOWN_SPAN);
+        dirtyFrom = Math.min(dirtyFrom, positionStart);
+    }
+
+    /**
+     * Brings the index up to date with the adapter. Cheap when nothing has changed.
+     *
+     * @param adapterItemCount current number of items in the adapter
+     */
+    void resolve(int adapterItemCount) {
+        if (spanSizeLookup == null) {
+            itemCount = adapterItemCount;
+            return;
+        }
+        if (invalid || itemCount != adapterItemCount) {
+            spans = ensureCapacity(spans, adapterItemCount);
+            Arrays.fill(spans, 0, adapterItemCount, UNKNOWN_SPAN);
+            itemCount = adapterItemCount;
+            rowCount = 0;
+            dirtyFrom = 0;
+            invalid = false;
+        }
+        if (dirtyFrom == CLEAN) {
+            return;
+        }
+        // positions before the first changed one are intact, so is the row that contains it
+        int row = rowCount == 0 ? 0 : findRow(dirtyFrom);
+        if (row > 0 && rowStarts[row] == dirtyFrom) {
+            // the previous row was closed by the item that has changed
+            row--;
+        }
+        int position = rowCount == 0 ? 0 : rowStarts[row];
+        rowCount = row;
+        int column = spanCount;
+        for (; position < itemCount; position++) {
+            int span = spans[position];
+            if (span == UNKNOWN_SPAN) {
+                span = Math.max(1, Math.min(spanCount, spanSizeLookup.getSpanSize(position)));
+                spans[position] = span;
+            }
+            if (column + span > spanCount) {
+                rowStarts = ensureCapacity(rowStarts, rowCount + 1);
+                rowStarts[rowCount++] = position;
+                column = 0;
+            }
+            column += span;
+        }
+        dirtyFrom = CLEAN;
+    }
+
+    int getItemCount() {
+        return itemCount;
+    }
+
+    int getRowCount() {
+        if (spanSizeLookup == null) {
+            return (itemCount + spanCount - 1) / spanCount;
+        }
+        return rowCount;
+    }
+
+    int getRowForPosition(int position) {
+        if (spanSizeLookup == null) {
+            return position / spanCount;
+        }
+        return rowCount == 0 ? 0 : findRow(position);
+    }
+
+    /**
+     * @return position of the first item in the row or item count if there is no such row
+     */
+    int getFirstPositionInRow(int row) {
+        if (spanSizeLookup == null) {
+            return row * spanCount;
+        }
+        if (row < 0) {
+            return 0;
+        }
+        return row < rowCount ? rowStarts[row] : itemCount;
+    }
+
+    int getLastPositionInRow(int row) {
+        if (spanSizeLookup == null) {
+            return Math.min(itemCount, (row + 1) * spanCount) - 1;
+        }
+        return getFirstPositionInRow(row + 1) - 1;
+    }
+
+    int getSpanSize(int position) {
+        if (spanSizeLookup == null || position < 0 || position >= itemCount) {
+            return 1;
+        }
+        return spans[position];
+    }
+
+    /**
+     * @return index of the first column occupied by the item
+     */
+    int getColumn(int position) {
+        if (spanSizeLookup == null) {
+            return position % spanCount;
+        }
+        if (position < 0 || position >= itemCount) {
+            return 0;
+        }
+        int column = 0;
+        for (int i = getFirstPositionInRow(getRowForPosition(position)); i < position; i++) {
+            column += spans[i];
+        }
+        return column;
+    }
+
+    /**
+     * @return the last row that starts at or before the given position
+     */
+    private int findRow(int position) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (rowStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (array.length >= capacity) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 3 / 2 + 16));
+    }
+}
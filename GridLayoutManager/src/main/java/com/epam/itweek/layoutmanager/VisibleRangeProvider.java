@@ -0,0 +1,26 @@
+package com.epam.itweek.layoutmanager;
+
+/**
+ * Implemented by layout managers that can tell which items are in the viewport and how far other items are
+ * from it without laying them out, so that paging and prefetching work with any of them.
+ */
+public interface VisibleRangeProvider {
+
+    /**
+     * @return adapter position of the first item of the first row that intersects the viewport
+     * or {@link android.support.v7.widget.RecyclerView#NO_POSITION} if nothing is laid out
+     */
+    int findFirstVisibleItemPosition();
+
+    /**
+     * @return adapter position of the last item of the last row that intersects the viewport
+     * or {@link android.support.v7.widget.RecyclerView#NO_POSITION} if nothing is laid out
+     */
+    int findLastVisibleItemPosition();
+
+    /**
+     * @param position adapter position of an item
+     * @return 0 if the row of the item intersects the viewport, otherwise number of rows between it and the viewport
+     */
+    int getRowDistanceFromViewport(int position);
+}
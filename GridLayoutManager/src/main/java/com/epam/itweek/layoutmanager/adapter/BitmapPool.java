@@ -0,0 +1,168 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.graphics.Bitmap;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Bitmaps nobody uses any more, kept to be decoded into or drawn into instead of allocating new pixels.
+ * Grid cells share dimensions, so a handful of buckets by allocation size serves nearly every request.
+ *
+ * A bitmap may only be reused once it is neither in the memory cache nor on screen, so users count references:
+ * {@link PoolingLruCache} retains bitmaps it holds and {@link PhotoCellView} retains the one it draws.
+ * When the last reference is released the bitmap goes to the pool.
+ *
+ * Only mutable bitmaps are pooled and reuse relies on {@link Bitmap#reconfigure(int, int, Bitmap.Config)}.
+ * Methods are called from the main thread, Picasso's dispatcher and its decoding threads, so they are synchronized.
+ */
+public class BitmapPool {
+
+    /**
+     * Bitmaps more than this times larger than requested are not handed out - they would waste memory.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final long maxSize;
+
+    /**
+     * Pooled bitmaps by allocation byte count.
+     */
+    private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+
+    /**
+     * Reference counts of bitmaps in use, weak so bitmaps of views that went away without releasing do not leak.
+     */
+    private final Map<Bitmap, int[]> references = new WeakHashMap<Bitmap, int[]>();
+
+    private long size;
+
+    private int hitCount;
+
+    private int missCount;
+
+    /**
+     * @param maxSize bytes of pixels the pool keeps at most
+     */
+    public BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return a pooled bitmap reconfigured to the dimensions or null if there is none large enough.
+     * Pixels are left as they were
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final int requiredSize = width * height * getBytesPerPixel(config);
+        final Map.Entry<Integer, LinkedList<Bitmap>> bucket = buckets.ceilingEntry(requiredSize);
+        if (bucket == null || bucket.getKey() > (long) requiredSize * MAX_SIZE_MULTIPLE) {
+            missCount++;
+            return null;
+        }
+        final Bitmap bitmap = bucket.getValue().removeLast();
+        if (bucket.getValue().isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        size -= bucket.getKey();
+        bitmap.reconfigure(width, height, config);
+        hitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Gives a bitmap nobody references to the pool.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || references.containsKey(bitmap)) {
+            return;
+        }
+        final int allocationSize = bitmap.getAllocationByteCount();
+        if (allocationSize > maxSize) {
+            return;
+        }
+        LinkedList<Bitmap> bucket = buckets.get(allocationSize);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            buckets.put(allocationSize, bucket);
+        }
+        if (bucket.contains(bitmap)) {
+            return;
+        }
+        bucket.addLast(bitmap);
+        size += allocationSize;
+        trimToSize();
+    }
+
+    public synchronized void retain(Bitmap bitmap) {
+        int[] count = references.get(bitmap);
+        if (count == null) {
+            count = new int[1];
+            references.put(bitmap, count);
+        }
+        count[0]++;
+    }
+
+    /**
+     * Drops a reference taken with {@link #retain(Bitmap)}, the bitmap is pooled if it was the last one.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        final int[] count = references.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (--count[0] == 0) {
+            references.remove(bitmap);
+            put(bitmap);
+        }
+    }
+
+    /**
+     * Drops all pooled bitmaps, e.g. under memory pressure. Referenced bitmaps are not affected.
+     */
+    public synchronized void clear() {
+        buckets.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Evicts the oldest bitmaps of the largest buckets first - they are the least likely to fit a cell.
+     */
+    private void trimToSize() {
+        while (size > maxSize && !buckets.isEmpty()) {
+            final Map.Entry<Integer, LinkedList<Bitmap>> largest = buckets.lastEntry();
+            largest.getValue().removeFirst();
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+            size -= largest.getKey();
+        }
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,353 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+/**
+ * Retrofit client that keeps GET responses on disk and revalidates them with {@code If-None-Match} and
+ * {@code If-Modified-Since}: an unchanged feed costs a 304 without a body, the stored body is returned as 200.
+ * Responses are always revalidated, whatever cache headers the server sends - the feed changes often
+ * but not on every request.
+ *
+ * Concurrent requests for the same url share a single request: the first caller executes it,
+ * the others wait for its response or get its failure wrapped in an exception of the same kind.
+ *
+ * Entries are evicted least recently used first once the directory grows over the maximum size.
+ */
+public class CachingClient implements Client {
+
+    private static final String TAG = CachingClient.class.getSimpleName();
+
+    private static final int ENTRY_VERSION = 1;
+
+    private static final int HTTP_OK = 200;
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final Client delegate;
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final Map<String, InFlight> inFlight = new HashMap<String, InFlight>();
+
+    public CachingClient(Client delegate, File directory, long maxSize) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!"GET".equals(request.getMethod())) {
+            return delegate.execute(request);
+        }
+        final String url = request.getUrl();
+        InFlight call;
+        boolean owner = false;
+        synchronized (inFlight) {
+            call = inFlight.get(url);
+            if (call == null) {
+                call = new InFlight();
+                inFlight.put(url, call);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                call.response = executeWithCache(request);
+            } catch (IOException e) {
+                call.error = e;
+                throw e;
+            } catch (RuntimeException e) {
+                call.failure = e;
+                throw e;
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(url);
+                }
+                call.done.countDown();
+            }
+        } else {
+            try {
+                call.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for " + url);
+            }
+            // a failure of the owner is wrapped, so the waiter's stack trace is kept as well
+            if (call.error != null) {
+                throw new IOException("shared request for " + url + " failed", call.error);
+            }
+            if (call.failure != null) {
+                throw new RuntimeException("shared request for " + url + " failed", call.failure);
+            }
+            if (call.response == null) {
+                throw new IOException("shared request for " + url + " failed");
+            }
+        }
+        // callers share the body bytes, which are never modified - every reader gets a stream of its own
+        return copy(call.response);
+    }
+
+    private Response executeWithCache(Request request) throws IOException {
+        final File file = getFile(request.getUrl());
+        final Entry cached = read(file);
+        Request conditional = request;
+        if (cached != null && (cached.etag != null || cached.lastModified != null)) {
+            List<Header> headers = new ArrayList<Header>(request.getHeaders());
+            if (cached.etag != null) {
+                headers.add(new Header(HEADER_IF_NONE_MATCH, cached.etag));
+            }
+            if (cached.lastModified != null) {
+                headers.add(new Header(HEADER_IF_MODIFIED_SINCE, cached.lastModified));
+            }
+            conditional = new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+        }
+        final Response response = delegate.execute(conditional);
+        if (response.getStatus() == HTTP_NOT_MODIFIED && cached != null) {
+            final String etag = getHeader(response, HEADER_ETAG);
+            final String lastModified = getHeader(response, HEADER_LAST_MODIFIED);
+            if (etag != null || lastModified != null) {
+                cached.etag = etag != null ? etag : cached.etag;
+                cached.lastModified = lastModified != null ? lastModified : cached.lastModified;
+                write(file, cached);
+            } else if (!file.setLastModified(System.currentTimeMillis())) {
+                Log.w(TAG, "failed to touch " + file);
+            }
+            return new Response(response.getUrl(), HTTP_OK, "OK", response.getHeaders(),
+                    new TypedByteArray(cached.mimeType, cached.body));
+        }
+        if (response.getStatus() != HTTP_OK || response.getBody() == null) {
+            return buffer(response);
+        }
+        final Response buffered = buffer(response);
+        final String etag = getHeader(response, HEADER_ETAG);
+        final String lastModified = getHeader(response, HEADER_LAST_MODIFIED);
+        if (etag != null || lastModified != null) {
+            Entry entry = new Entry();
+            entry.etag = etag;
+            entry.lastModified = lastModified;
+            entry.mimeType = buffered.getBody().mimeType();
+            entry.body = ((TypedByteArray) buffered.getBody()).getBytes();
+            write(file, entry);
+            trimToSize();
+        }
+        return buffered;
+    }
+
+    private Entry read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != ENTRY_VERSION) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.etag = readNullable(in);
+            entry.lastModified = readNullable(in);
+            entry.mimeType = readNullable(in);
+            entry.body = new byte[in.readInt()];
+            in.readFully(entry.body);
+            return entry;
+        } catch (IOException e) {
+            Log.w(TAG, "failed to read cached response " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so a reader never sees half of an entry.
+     */
+    private void write(File file, Entry entry) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "failed to create " + directory);
+            return;
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(temp));
+            out.writeInt(ENTRY_VERSION);
+            writeNullable(out, entry.etag);
+            writeNullable(out, entry.lastModified);
+            writeNullable(out, entry.mimeType);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "failed to store cached response " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write cached response " + file, e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private synchronized void trimToSize() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            final long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getFile(String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Reads the body into memory, so that the response can be stored and handed to every waiting caller.
+     */
+    private static Response buffer(Response response) throws IOException {
+        final TypedInput body = response.getBody();
+        if (body == null || body instanceof TypedByteArray) {
+            return response;
+        }
+        final InputStream in = body.in();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() > 0 ? (int) body.length() : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                    new TypedByteArray(body.mimeType(), bytes.toByteArray()));
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static Response copy(Response response) {
+        final TypedInput body = response.getBody();
+        if (!(body instanceof TypedByteArray)) {
+            return response;
+        }
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                new TypedByteArray(body.mimeType(), ((TypedByteArray) body).getBytes()));
+    }
+
+    private static String getHeader(Response response, String name) {
+        for (Header header : response.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class InFlight {
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Response response;
+
+        volatile IOException error;
+
+        volatile RuntimeException failure;
+    }
+
+    private static class Entry {
+
+        String etag;
+
+        String lastModified;
+
+        String mimeType;
+
+        byte[] body;
+    }
+}
@@ -0,0 +1,168 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+import com.squareup.picasso.UrlConnectionDownloader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Downloads a photo and decodes it straight into a cell sized, center cropped bitmap, reusing pixels
+ * from a {@link BitmapPool}: the subsampled decode goes into a pooled bitmap and is drawn into another
+ * pooled bitmap of the cell size, after which the decoded one goes straight back to the pool.
+ * In steady state scrolling no new pixel buffers are allocated.
+ *
+ * Picasso's own resize would copy the result into a new bitmap, so the cell size travels in the uri
+ * fragment instead - see {@link #cellUri(String, int, int)}. The fragment is not sent to the server.
+ *
+ * Cells are decoded to the {@link Request#config} of the request, ARGB_8888 if there is none.
+ * Only JPEGs, which cannot be transparent, are decoded to other formats - a pooled bitmap given to the decoder
+ * dictates the format and one without alpha would turn transparent pixels black.
+ */
+public class CellRequestHandler extends RequestHandler {
+
+    private static final String FRAGMENT_PREFIX = "cell=";
+
+    private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
+
+    private final Downloader downloader;
+
+    private final BitmapPool pool;
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    public CellRequestHandler(Context context, BitmapPool pool) {
+        this.downloader = new UrlConnectionDownloader(context);
+        this.pool = pool;
+    }
+
+    /**
+     * @return uri of the image decoded for a cell of the given size
+     */
+    public static Uri cellUri(String url, int cellWidth, int cellHeight) {
+        return Uri.parse(url + "#" + FRAGMENT_PREFIX + cellWidth + "x" + cellHeight);
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        final String scheme = data.uri.getScheme();
+        final String fragment = data.uri.getFragment();
+        return ("http".equals(scheme) || "https".equals(scheme))
+                && fragment != null && fragment.startsWith(FRAGMENT_PREFIX);
+    }
+
+    @Override
+    public Result load(Request data) throws IOException {
+        final String fragment = data.uri.getFragment();
+        final int separator = fragment.indexOf('x');
+        final int cellWidth;
+        final int cellHeight;
+        try {
+            cellWidth = Integer.parseInt(fragment.substring(FRAGMENT_PREFIX.length(), separator));
+            cellHeight = Integer.parseInt(fragment.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IOException("malformed cell size in " + data.uri);
+        }
+        final Downloader.Response response = downloader.load(data.uri.buildUpon().fragment(null).build(), false);
+        if (response == null) {
+            return null;
+        }
+        final Bitmap.Config requestedConfig = data.config != null ? data.config : DEFAULT_CONFIG;
+        final Bitmap decoded = response.getBitmap() != null
+                ? response.getBitmap() : decode(response, cellWidth, cellHeight, requestedConfig);
+        if (decoded == null) {
+            throw new IOException("failed to decode " + data.uri);
+        }
+        // image is not a JPEG and may have alpha
+        final Bitmap.Config config = decoded.hasAlpha() ? Bitmap.Config.ARGB_8888 : requestedConfig;
+        Bitmap cell = pool.get(cellWidth, cellHeight, config);
+        if (cell == null) {
+            cell = Bitmap.createBitmap(cellWidth, cellHeight, config);
+        } else if (decoded.hasAlpha()) {
+            cell.eraseColor(Color.TRANSPARENT);
+        }
+        cell.setHasAlpha(decoded.hasAlpha());
+        new Canvas(cell).drawBitmap(decoded, centerCrop(decoded, cellWidth, cellHeight),
+                new Rect(0, 0, cellWidth, cellHeight), paint);
+        pool.put(decoded);
+        return new Result(cell, Picasso.LoadedFrom.NETWORK);
+    }
+
+    /**
+     * Decodes subsampled to the smallest size that still covers the cell, into a pooled bitmap if there is one.
+     */
+    private Bitmap decode(Downloader.Response response, int cellWidth, int cellHeight, Bitmap.Config config)
+            throws IOException {
+        final byte[] bytes = readFully(response);
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= cellWidth
+                && options.outHeight / (sampleSize * 2) >= cellHeight) {
+            sampleSize *= 2;
+        }
+        if (!"image/jpeg".equals(options.outMimeType)) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = config;
+        options.inBitmap = pool.get((options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize, config);
+        try {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap does not fit after all - decode into a new one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+    }
+
+    private static Rect centerCrop(Bitmap bitmap, int width, int height) {
+        final int bitmapWidth = bitmap.getWidth();
+        final int bitmapHeight = bitmap.getHeight();
+        if ((long) bitmapWidth * height > (long) bitmapHeight * width) {
+            final int croppedWidth = (int) ((long) bitmapHeight * width / height);
+            final int left = (bitmapWidth - croppedWidth) / 2;
+            return new Rect(left, 0, left + croppedWidth, bitmapHeight);
+        }
+        final int croppedHeight = (int) ((long) bitmapWidth * height / width);
+        final int top = (bitmapHeight - croppedHeight) / 2;
+        return new Rect(0, top, bitmapWidth, top + croppedHeight);
+    }
+
+    private static byte[] readFully(Downloader.Response response) throws IOException {
+        final InputStream in = response.getInputStream();
+        try {
+            final long contentLength = response.getContentLength();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 16 * 1024);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory cache that counts hits and misses for every stable key of an image.
+ *
+ * Picasso appends transformation parameters to the stable key of a request, so counters of a stable key
+ * are the sum over cache keys that start with it and a line break - the key set with
+ * {@link com.squareup.picasso.RequestCreator#stableKey(String)}, e.g. {@link FiveHundredPxRecyclerAdapter#cacheKey}.
+ * Counters are kept by cache key, so counting does not allocate once a key is known.
+ *
+ * Only counters of the {@link #MAX_COUNTED_KEYS} most recently requested keys are kept - an infinite feed
+ * must not grow them without bound. Totals over all keys are kept as well.
+ * Picasso accesses the cache from the main thread and from its dispatcher thread, so counters are synchronized.
+ */
+public class CountingCache implements Cache {
+
+    private static final int HIT = 0;
+
+    private static final int MISS = 1;
+
+    /**
+     * Several screens of cells - enough to see whether scrolling back over a row is served from memory.
+     */
+    private static final int MAX_COUNTED_KEYS = 1024;
+
+    private final Cache cache;
+
+    private final Map<String, int[]> counters = new LinkedHashMap<String, int[]>(0, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_COUNTED_KEYS;
+        }
+    };
+
+    private final int[] totals = new int[2];
+
+    public CountingCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Bitmap get(String key) {
+        Bitmap bitmap = cache.get(key);
+        count(key, bitmap != null ? HIT : MISS);
+        return bitmap;
+    }
+
+    @Override
+    public void set(String key, Bitmap bitmap) {
+        cache.set(key, bitmap);
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return hits of the stable key since its counters were last dropped
+     */
+    public synchronized int getHitCount(String stableKey) {
+        return sum(stableKey, HIT);
+    }
+
+    public synchronized int getMissCount(String stableKey) {
+        return sum(stableKey, MISS);
+    }
+
+    public synchronized int getTotalHitCount() {
+        return totals[HIT];
+    }
+
+    public synchronized int getTotalMissCount() {
+        return totals[MISS];
+    }
+
+    public synchronized void resetCounters() {
+        counters.clear();
+        totals[HIT] = 0;
+        totals[MISS] = 0;
+    }
+
+    private synchronized void count(String key, int type) {
+        int[] counter = counters.get(key);
+        if (counter == null) {
+            counter = new int[2];
+            counters.put(key, counter);
+        }
+        counter[type]++;
+        totals[type]++;
+    }
+
+    private int sum(String stableKey, int type) {
+        int sum = 0;
+        for (Map.Entry<String, int[]> entry : counters.entrySet()) {
+            final String key = entry.getKey();
+            if (key.startsWith(stableKey)
+                    && (key.length() == stableKey.length() || key.charAt(stableKey.length()) == '\n')) {
+                sum += entry.getValue()[type];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,49 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import java.io.File;
+
+import retrofit.RequestInterceptor;
+import retrofit.RestAdapter;
+import retrofit.client.UrlConnectionClient;
+
+/**
+ * Creates {@link FiveHundredPxService} for the given endpoint, e.g. a local mock server.
+ */
+public final class FiveHundredPxApi {
+
+    public static final String URL_FIVE_HUNDRED_PX = "https://api.500px.com";
+
+    public static final String PARAM_CONSUMER_KEY = "consumer_key";
+
+    private static final long HTTP_CACHE_SIZE = 4 * 1024 * 1024;
+
+    private FiveHundredPxApi() {
+    }
+
+    /**
+     * Responses are not cached.
+     */
+    public static FiveHundredPxService create(String endpoint) {
+        return create(endpoint, null);
+    }
+
+    /**
+     * @param cacheDirectory directory to keep responses in for revalidation, null to not cache them
+     */
+    public static FiveHundredPxService create(String endpoint, File cacheDirectory) {
+        RestAdapter.Builder builder = new RestAdapter.Builder();
+        if (cacheDirectory != null) {
+            builder.setClient(new CachingClient(new UrlConnectionClient(), cacheDirectory, HTTP_CACHE_SIZE));
+        }
+        RestAdapter restAdapter = builder
+                .setEndpoint(endpoint)
+                .setConverter(new PhotoPageConverter())
+                .setRequestInterceptor(new RequestInterceptor() {
+                    @Override
+                    public void intercept(RequestFacade request) {
+                        request.addQueryParam(PARAM_CONSUMER_KEY, Config.FIVE_HUNDRED_PX_CONSUMER_KEY);
+                    }
+                }).build();
+        return restAdapter.create(FiveHundredPxService.class);
+    }
+}
@@ -1,82 +1,266 @@
 package com.epam.itweek.layoutmanager.adapter;
 
-import android.app.ActivityManager;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 
+import com.epam.itweek.layoutmanager.CellSizeProvider;
+import com.epam.itweek.layoutmanager.LayoutManagerApplication;
+import com.epam.itweek.layoutmanager.LayoutMetrics;
 import com.epam.itweek.layoutmanager.R;
-import com.squareup.picasso.LruCache;
+import com.epam.itweek.layoutmanager.VisibleRangeProvider;
 import com.squareup.picasso.Picasso;
-
-import java.util.List;
+import com.squareup.picasso.RequestCreator;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
-import hugo.weaving.DebugLog;
-
-import static android.content.Context.ACTIVITY_SERVICE;
-import static android.content.pm.ApplicationInfo.FLAG_LARGE_HEAP;
-import static android.os.Build.VERSION.SDK_INT;
-import static android.os.Build.VERSION_CODES.HONEYCOMB;
 
 public class FiveHundredPxRecyclerAdapter extends RecyclerView.Adapter<FiveHundredPxRecyclerAdapter.ViewHolder> {
 
-    private List<FiveHundredPxService.Photo> photos;
-    private Picasso picasso;
+    private PhotoColumns photos;
+    private final Picasso picasso;
+    private final BitmapPool bitmapPool;
+    private final PoolingLruCache memoryCache;
+    private LayoutMetrics metrics;
+    private RecyclerView recyclerView;
+    private Bitmap.Config pixelFormat = Bitmap.Config.RGB_565;
 
-    public FiveHundredPxRecyclerAdapter(List<FiveHundredPxService.Photo> photos, Context ctx) {
+    /**
+     * Margins and padding of an item view around the photo, the same for every view inflated from the item layout.
+     * Negative until the first view is created.
+     */
+    private int contentInsetWidth = -1;
+    private int contentInsetHeight = -1;
+
+    public FiveHundredPxRecyclerAdapter(PhotoColumns photos, Context ctx) {
         this.photos = photos;
         setHasStableIds(true);
-        buildPicasso(ctx);
+        picasso = LayoutManagerApplication.getPicasso(ctx);
+        bitmapPool = LayoutManagerApplication.getBitmapPool(ctx);
+        memoryCache = LayoutManagerApplication.getMemoryCache(ctx);
     }
 
-    private void buildPicasso(Context ctx) {
-        picasso = new Picasso.Builder(ctx)
-                .indicatorsEnabled(true)
-//                .loggingEnabled(true)
-                .memoryCache(new LruCache(calculateMemoryCacheSize(ctx)))
-                .build();
+    /**
+     * @param metrics counters to report created and bound views to, may be null
+     */
+    public void setMetrics(LayoutMetrics metrics) {
+        this.metrics = metrics;
     }
 
-    static int calculateMemoryCacheSize(Context context) {
-        ActivityManager am = (ActivityManager) context.getSystemService(ACTIVITY_SERVICE);
-        boolean largeHeap = (context.getApplicationInfo().flags & FLAG_LARGE_HEAP) != 0;
-        int memoryClass = am.getMemoryClass();
-        if (largeHeap && SDK_INT >= HONEYCOMB) {
-            memoryClass = am.getLargeMemoryClass();
-        }
-        // Target ~50% of the available heap.
-        return 1024 * 1024 * memoryClass / 2;
+    /**
+     * Pixel format cells are decoded to. Photos in the grid are opaque and small, so by default they take
+     * 2 bytes per pixel instead of 4 and the memory cache holds twice as many rows; banding is hidden by dithering.
+     * Images with transparency are decoded with full precision regardless of the format.
+     *
+     * @param pixelFormat {@link Bitmap.Config#RGB_565} or {@link Bitmap.Config#ARGB_8888}
+     */
+    public void setPixelFormat(Bitmap.Config pixelFormat) {
+        this.pixelFormat = pixelFormat;
     }
 
-    @Override @DebugLog
+    public Bitmap.Config getPixelFormat() {
+        return pixelFormat;
+    }
+
+    /**
+     * @return bytes a pixel of a cell takes in memory, for estimates of the memory cells need
+     */
+    public int getBytesPerPixel() {
+        return BitmapPool.getBytesPerPixel(pixelFormat);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (metrics != null) {
+            metrics.onViewCreated();
+        }
         View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item, parent, false);
-        return new ViewHolder(v);
+        ViewHolder holder = new ViewHolder(v);
+        holder.image.setBitmapPool(bitmapPool);
+        if (contentInsetWidth < 0) {
+            measureContentInsets(holder.image);
+        }
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(final ViewHolder holder, int position) {
+        if (metrics != null) {
+            metrics.onViewBound();
+        }
+        holder.image.setOnSizeReadyListener(null);
+        if (!photos.isLoaded(position)) {
+            // page of the photo was dropped and is being loaded again
+            picasso.cancelRequest(holder.image);
+            holder.image.setBitmap(null);
+            holder.image.setPreview(null);
+            holder.image.setTag(null);
+            return;
+        }
+        holder.image.setTag(photos.getId(position));
+        int width = getContentWidth(getCellWidth(position));
+        int height = getContentHeight(getCellHeight(position));
+        if (width <= 0 || height <= 0) {
+            // layout manager does not know cell sizes - a recycled cell most likely keeps its size
+            width = holder.image.getContentWidth();
+            height = holder.image.getContentHeight();
+        }
+        if (width > 0 && height > 0) {
+            load(holder, position, width, height);
+            return;
+        }
+        // a new cell - the request is made once it is laid out
+        picasso.cancelRequest(holder.image);
+        holder.image.setBitmap(null);
+        holder.image.setPreview(null);
+        holder.image.setOnSizeReadyListener(new PhotoCellView.OnSizeReadyListener() {
+            @Override
+            public void onSizeReady(PhotoCellView view, int width, int height) {
+                final int currentPosition = holder.getPosition();
+                if (currentPosition != RecyclerView.NO_POSITION && photos.isLoaded(currentPosition)) {
+                    load(holder, currentPosition, width, height);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        // the view left the screen and its cache - nobody is going to see this image
+        picasso.cancelRequest(holder.image);
+        holder.image.setOnSizeReadyListener(null);
+        // once the memory cache lets go of the bitmap too it is reused for new decodes
+        holder.image.setBitmap(null);
+        holder.image.setPreview(null);
+    }
+
+    /**
+     * Placeholder is drawn by the cell itself, so the request does not load a placeholder drawable.
+     * A preview of an image evicted from the memory cache is shown until it is loaded again.
+     */
+    private void load(ViewHolder holder, int position, int width, int height) {
+        holder.image.setPreview(memoryCache.getPreview(cacheKey(photos.getId(position), width, height, pixelFormat)));
+        loadForCell(position, width, height)
+                .priority(getPriority(position))
+                .into(holder.image);
     }
 
-    @Override @DebugLog
-    public void onBindViewHolder(ViewHolder holder, int position) {
-        FiveHundredPxService.Photo photo = photos.get(position);
-        picasso.load(photo.image_url)
-                /*
-                * By default Picasso can't center crop image to fit into target view - only scale which destroys aspect ratio.
-                * Also we don't know actual target view size at binding time.
-                * So we need a transformation that has access to a target view
-                * and can deffer calculation of new image dimensions until we actually have both image and size of a target view.
-                */
-                .transform(new DeferredResizeTransformation(holder.image))
-                .placeholder(R.color.primary).into(holder.image);
-        holder.tapArea.setTag(photo);
+    /**
+     * Visible rows are loaded first, rows bound ahead of the viewport by the layout manager go after them.
+     */
+    private Picasso.Priority getPriority(int position) {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof VisibleRangeProvider)) {
+            return Picasso.Priority.NORMAL;
+        }
+        int distance = ((VisibleRangeProvider) recyclerView.getLayoutManager()).getRowDistanceFromViewport(position);
+        if (distance == 0) {
+            return Picasso.Priority.HIGH;
+        }
+        return distance == 1 ? Picasso.Priority.NORMAL : Picasso.Priority.LOW;
+    }
+
+    /**
+     * Layout manager knows the cell size before the view is measured, see {@link #getContentWidth(int)}.
+     * With target size known up front {@link CellRequestHandler} subsamples while decoding
+     * and crops into a bitmap of the content size, reusing pooled pixels for both, and the cell draws it unscaled.
+     * The same photo in the same cell always maps to the same memory cache entry, so {@link ImagePrefetcher}
+     * uses this method too. Pixel format is a part of the entry - Picasso does not key its memory cache by it.
+     *
+     * Requests are tagged with the adapter to be paused all together while the grid flings.
+     *
+     * @param width  content width of the cell, not the cell width
+     * @param height content height of the cell
+     */
+    public RequestCreator loadForCell(int position, int width, int height) {
+        return picasso.load(CellRequestHandler.cellUri(photos.getImageUrl(position), width, height))
+                .stableKey(cacheKey(photos.getId(position), width, height, pixelFormat))
+                .config(pixelFormat)
+                .tag(this);
+    }
+
+    /**
+     * Converts a cell width reported by the layout manager, which includes item margins, to the width
+     * of the photo drawn in it - the size photos are decoded at and keyed by.
+     *
+     * @return content width or 0 if it is not known yet
+     */
+    public int getContentWidth(int cellWidth) {
+        final int inset = contentInsetWidth;
+        return inset < 0 || cellWidth <= inset ? 0 : cellWidth - inset;
+    }
+
+    /**
+     * @see #getContentWidth(int)
+     */
+    public int getContentHeight(int cellHeight) {
+        final int inset = contentInsetHeight;
+        return inset < 0 || cellHeight <= inset ? 0 : cellHeight - inset;
+    }
+
+    /**
+     * The cell view is the root of the item layout, so it is the cell minus its margins.
+     */
+    private void measureContentInsets(PhotoCellView image) {
+        int width = image.getPaddingLeft() + image.getPaddingRight();
+        int height = image.getPaddingTop() + image.getPaddingBottom();
+        if (image.getLayoutParams() instanceof ViewGroup.MarginLayoutParams) {
+            ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) image.getLayoutParams();
+            width += lp.leftMargin + lp.rightMargin;
+            height += lp.topMargin + lp.bottomMargin;
+        }
+        contentInsetHeight = height;
+        contentInsetWidth = width;
+    }
+
+    /**
+     * @return false if the photo at the position is not loaded at the moment
+     */
+    public boolean isLoaded(int position) {
+        return photos.isLoaded(position);
+    }
+
+    /**
+     * @return stable key of a photo decoded for a cell content of the given size and format, counted by {@link CountingCache}
+     */
+    public static String cacheKey(int photoId, int cellWidth, int cellHeight, Bitmap.Config pixelFormat) {
+        return "500px:" + photoId + "@" + cellWidth + "x" + cellHeight + "/" + pixelFormat;
+    }
+
+    private int getCellWidth(int position) {
+        if (recyclerView != null && recyclerView.getLayoutManager() instanceof CellSizeProvider) {
+            return ((CellSizeProvider) recyclerView.getLayoutManager()).getCellWidth(position);
+        }
+        return 0;
+    }
+
+    private int getCellHeight(int position) {
+        if (recyclerView != null && recyclerView.getLayoutManager() instanceof CellSizeProvider) {
+            return ((CellSizeProvider) recyclerView.getLayoutManager()).getCellHeight(position);
+        }
+        return 0;
     }
 
+    /**
+     * Unloaded photos keep their ids, so a cell keeps its id while its page is dropped and loaded again.
+     * A slot without a known photo gets a negative id derived from its position - never {@link RecyclerView#NO_ID}.
+     */
     @Override
     public long getItemId(int position) {
-        return photos.get(position).id;
+        final int id = photos.getId(position);
+        return id > 0 ? id : -2L - position;
     }
 
     @Override
@@ -85,8 +269,7 @@ public class FiveHundredPxRecyclerAdapter extends RecyclerView.Adapter<FiveHundr
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
-        @InjectView(R.id.image) public ImageView image;
-        @InjectView(R.id.tapArea) public View tapArea;
+        @InjectView(R.id.image) public PhotoCellView image;
 
         public ViewHolder(View itemView) {
             super(itemView);
@@ -1,27 +1,25 @@
 package com.epam.itweek.layoutmanager.adapter;
 
-import java.util.List;
-
 import retrofit.Callback;
 import retrofit.http.GET;
+import retrofit.http.Query;
 
 public interface FiveHundredPxService {
 
-    @GET("/v1/photos?feature=popular&sort=rating&image_size=4&rpp=99")
-    void getPopularPhotos(Callback<PhotosResponse> callback);
-
-    static class PhotosResponse {
-        public List<Photo> photos;
-    }
-
-    static class Photo {
-        public int id;
-        public String image_url;
-        public String name;
-        public User user;
-    }
+    /**
+     * @param page           1-based number of the page
+     * @param resultsPerPage number of photos in a page, up to 100
+     */
+    @GET("/v1/photos?feature=popular&sort=rating&image_size=4")
+    void getPopularPhotos(@Query("page") int page, @Query("rpp") int resultsPerPage,
+                          Callback<PhotoPage> callback);
 
-    static class User {
-        public String fullname;
+    /**
+     * Page of photos, read from the response by {@link PhotoPageConverter} without intermediate objects.
+     */
+    static class PhotoPage {
+        public int current_page;
+        public int total_pages;
+        public final PhotoColumns photos = new PhotoColumns();
     }
 }
@@ -0,0 +1,203 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.support.v7.widget.RecyclerView;
+
+import com.epam.itweek.layoutmanager.CellSizeProvider;
+import com.epam.itweek.layoutmanager.VisibleRangeProvider;
+import com.squareup.picasso.Cache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads images of the rows the grid is scrolling towards into the memory cache, so that they are ready
+ * by the time their views are bound and the placeholder is not visible.
+ *
+ * Images are requested exactly like the adapter requests them - same stable key and cell size -
+ * but with the lowest priority, so they only take threads visible cells do not need.
+ * Number of rows ahead grows with scroll velocity and is limited by the size of the memory cache;
+ * number of requests in flight is limited as well. Requests ahead are cancelled when direction changes.
+ *
+ * Works with whichever layout manager is attached to the RecyclerView at the moment, as long as it is
+ * a {@link VisibleRangeProvider} and a {@link CellSizeProvider}.
+ */
+public class ImagePrefetcher implements RecyclerView.OnScrollListener {
+
+    public static final int MAX_PREFETCH_ROWS = 4;
+
+    /**
+     * How far ahead in time we look when deciding how many rows to prefetch for the current velocity.
+     */
+    private static final long LOOKAHEAD_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Scroll events further apart than this are not used for velocity estimation.
+     */
+    private static final long VELOCITY_RESET_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Prefetched rows may take at most 1/n of the memory cache, so they never push out the rows on screen.
+     */
+    private static final int CACHE_SHARE = 4;
+
+    private final Picasso picasso;
+
+    private final Cache cache;
+
+    private final FiveHundredPxRecyclerAdapter adapter;
+
+    private final RecyclerView recyclerView;
+
+    private final int maxInFlight;
+
+    private final Set<PrefetchTarget> inFlight = new HashSet<PrefetchTarget>();
+
+    private int direction;
+
+    private int nextPosition = RecyclerView.NO_POSITION;
+
+    private float velocity;
+
+    private long lastScrollNs;
+
+    /**
+     * @param maxInFlight maximum number of prefetch requests executed at the same time
+     */
+    public ImagePrefetcher(Picasso picasso, Cache cache, FiveHundredPxRecyclerAdapter adapter,
+                           RecyclerView recyclerView, int maxInFlight) {
+        this.picasso = picasso;
+        this.cache = cache;
+        this.adapter = adapter;
+        this.recyclerView = recyclerView;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void onScrollStateChanged(int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            velocity = 0;
+        }
+    }
+
+    @Override
+    public void onScrolled(int dx, int dy) {
+        if (dy == 0 || !isLayoutManagerSupported()) {
+            return;
+        }
+        final VisibleRangeProvider layoutManager = (VisibleRangeProvider) recyclerView.getLayoutManager();
+        final long now = System.nanoTime();
+        final long dt = now - lastScrollNs;
+        lastScrollNs = now;
+        final float instantVelocity = dy * (float) TimeUnit.SECONDS.toNanos(1) / Math.max(1, dt);
+        velocity = dt < VELOCITY_RESET_NS && Math.signum(instantVelocity) == Math.signum(velocity)
+                ? (velocity + instantVelocity) / 2 : instantVelocity;
+
+        final int newDirection = dy > 0 ? 1 : -1;
+        if (newDirection != direction) {
+            cancel();
+            direction = newDirection;
+        }
+        final int firstAhead = direction > 0
+                ? layoutManager.findLastVisibleItemPosition() + 1
+                : layoutManager.findFirstVisibleItemPosition() - 1;
+        if (nextPosition == RecyclerView.NO_POSITION || (nextPosition - firstAhead) * direction < 0) {
+            // viewport moved past the prefetched rows
+            nextPosition = firstAhead;
+        }
+        prefetch();
+    }
+
+    /**
+     * Cancels all prefetch requests, e.g. when the screen goes away.
+     */
+    public void cancel() {
+        for (PrefetchTarget target : new ArrayList<PrefetchTarget>(inFlight)) {
+            picasso.cancelRequest(target);
+        }
+        inFlight.clear();
+        nextPosition = RecyclerView.NO_POSITION;
+    }
+
+    private void prefetch() {
+        if (!isLayoutManagerSupported()) {
+            return;
+        }
+        final VisibleRangeProvider visibleRange = (VisibleRangeProvider) recyclerView.getLayoutManager();
+        final CellSizeProvider cellSize = (CellSizeProvider) recyclerView.getLayoutManager();
+        final int rows = rowsToPrefetch(cellSize);
+        while (inFlight.size() < maxInFlight && nextPosition >= 0 && nextPosition < adapter.getItemCount()
+                && visibleRange.getRowDistanceFromViewport(nextPosition) <= rows) {
+            final int position = nextPosition;
+            final int width = adapter.getContentWidth(cellSize.getCellWidth(position));
+            final int height = adapter.getContentHeight(cellSize.getCellHeight(position));
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+            // a memory cache hit is delivered synchronously and continues prefetching from the next position
+            nextPosition += direction;
+            if (!adapter.isLoaded(position)) {
+                continue;
+            }
+            PrefetchTarget target = new PrefetchTarget();
+            inFlight.add(target);
+            adapter.loadForCell(position, width, height)
+                    .priority(Picasso.Priority.LOW)
+                    .into(target);
+        }
+    }
+
+    /**
+     * @return number of rows reachable within {@link #LOOKAHEAD_NS} at the current velocity
+     * that fit into the share of the memory cache given to prefetch
+     */
+    private int rowsToPrefetch(CellSizeProvider cellSize) {
+        final int cellHeight = cellSize.getCellHeight(0);
+        if (cellHeight <= 0) {
+            return 0;
+        }
+        final float lookahead = Math.abs(velocity) * LOOKAHEAD_NS / TimeUnit.SECONDS.toNanos(1);
+        final int velocityRows = Math.max(1, Math.min(MAX_PREFETCH_ROWS, (int) Math.ceil(lookahead / cellHeight)));
+
+        final long rowBytes = (long) recyclerView.getWidth() * cellHeight * adapter.getBytesPerPixel();
+        final long memoryRows = rowBytes > 0 ? cache.maxSize() / CACHE_SHARE / rowBytes : 0;
+        return (int) Math.min(velocityRows, memoryRows);
+    }
+
+    private boolean isLayoutManagerSupported() {
+        final RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        return layoutManager instanceof VisibleRangeProvider && layoutManager instanceof CellSizeProvider;
+    }
+
+    /**
+     * Picasso keeps weak references to targets - we keep strong ones while requests are in flight.
+     */
+    private class PrefetchTarget implements Target {
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+            // the bitmap is in the memory cache now
+            onDone();
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable errorDrawable) {
+            onDone();
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable placeHolderDrawable) {
+        }
+
+        private void onDone() {
+            if (inFlight.remove(this)) {
+                prefetch();
+            }
+        }
+    }
+}
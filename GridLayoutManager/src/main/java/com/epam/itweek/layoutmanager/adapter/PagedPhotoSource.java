@@ -0,0 +1,495 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+/**
+ * Endless list of popular photos loaded page by page.
+ *
+ * The next page is requested in background once the last visible item comes within
+ * {@link #setPrefetchDistance(int) prefetch distance} of the end, loaded photos are appended
+ * and reported as a range insert, so already bound items are not touched.
+ *
+ * Under memory pressure pages far from the visible range can be dropped with {@link #dropFarPages(int, int)}.
+ * Positions stay the same - photos of a dropped page are unloaded and loaded again
+ * when the visible range comes close to them.
+ *
+ * With a {@link PhotoMetadataStore} photos stored by the previous run are shown right away on start.
+ * Their pages are stale - they are loaded again when the visible range comes close to them and
+ * only photos that have changed are reported and written back to the store.
+ *
+ * {@link #refresh()} loads pages around the visible range again and diffs them with the current photos
+ * in background, reporting inserts, removals, moves and changes - bound cells and scroll position stay.
+ *
+ * All methods and listener calls happen on the main thread - Retrofit delivers callbacks there.
+ */
+public class PagedPhotoSource {
+
+    public interface Listener {
+
+        void onPhotosInserted(int positionStart, int itemCount);
+
+        /**
+         * Photos in the range were dropped or loaded again with different content.
+         */
+        void onPhotosChanged(int positionStart, int itemCount);
+
+        void onPhotosRemoved(int positionStart, int itemCount);
+
+        void onPhotoMoved(int fromPosition, int toPosition);
+
+        void onPageFailed(int page, RetrofitError error);
+    }
+
+    private static final int DEFAULT_PAGE_SIZE = 60;
+
+    private static final int DEFAULT_PREFETCH_DISTANCE = DEFAULT_PAGE_SIZE / 2;
+
+    /**
+     * Number of pages around the visible range that are never dropped.
+     */
+    private static final int KEPT_PAGES = 1;
+
+    /**
+     * A dropped page that came back short is not requested again sooner than this.
+     */
+    private static final long INCOMPLETE_PAGE_RETRY_MS = 30 * 1000;
+
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PhotoListDiff");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final FiveHundredPxService service;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final int pageSize;
+
+    /**
+     * Loaded photos, photos of dropped pages are not loaded.
+     */
+    private final PhotoColumns photos = new PhotoColumns();
+
+    /**
+     * 0-based indices of pages being loaded.
+     */
+    private final BitSet loadingPages = new BitSet();
+
+    private final BitSet droppedPages = new BitSet();
+
+    /**
+     * Dropped pages that were reloaded but did not cover all of their slots - the feed got shorter since.
+     * They stay dropped and are retried after {@link #INCOMPLETE_PAGE_RETRY_MS}.
+     */
+    private final BitSet incompletePages = new BitSet();
+
+    private long incompletePagesRetryTime;
+
+    /**
+     * Pages read from the store that were not loaded from the network yet.
+     */
+    private final BitSet stalePages = new BitSet();
+
+    private PhotoMetadataStore store;
+
+    private int prefetchDistance = DEFAULT_PREFETCH_DISTANCE;
+
+    private boolean lastPageLoaded;
+
+    private int lastVisible = -1;
+
+    /**
+     * Incremented on every change of photos, a diff computed for other photos is not applied.
+     */
+    private int modificationCount;
+
+    /**
+     * Incremented on every refresh, pages of an abandoned refresh are ignored.
+     */
+    private int refreshGeneration;
+
+    private boolean refreshing;
+
+    private Listener listener;
+
+    public PagedPhotoSource(FiveHundredPxService service) {
+        this(service, DEFAULT_PAGE_SIZE);
+    }
+
+    public PagedPhotoSource(FiveHundredPxService service, int pageSize) {
+        this.service = service;
+        this.pageSize = pageSize;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param store persistent storage of loaded photos, read on {@link #start()}
+     */
+    public void setStore(PhotoMetadataStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param items number of items between the last visible item and the end of loaded photos
+     *              at which the next page is requested
+     */
+    public void setPrefetchDistance(int items) {
+        prefetchDistance = items;
+    }
+
+    /**
+     * @return loaded photos, live - grows as pages are appended. Must not be modified.
+     */
+    public PhotoColumns getPhotos() {
+        return photos;
+    }
+
+    public boolean isLastPageLoaded() {
+        return lastPageLoaded;
+    }
+
+    /**
+     * Loads the first page and reads stored photos in background if nothing is loaded yet.
+     * Stored photos are shown only if they arrive before the first page.
+     */
+    public void start() {
+        if (photos.size() > 0) {
+            return;
+        }
+        if (store != null) {
+            store.loadAsync(new PhotoMetadataStore.LoadCallback() {
+                @Override
+                public void onLoaded(PhotoColumns stored) {
+                    onStoredPhotosLoaded(stored);
+                }
+            });
+        }
+        loadPage(0);
+    }
+
+    private void onStoredPhotosLoaded(PhotoColumns stored) {
+        if (stored.size() == 0 || photos.size() > 0) {
+            return;
+        }
+        photos.addAll(stored, 0, stored.size());
+        modificationCount++;
+        stalePages.set(0, getPageCount());
+        if (listener != null) {
+            listener.onPhotosInserted(0, photos.size());
+        }
+    }
+
+    /**
+     * Requests pages the visible range is approaching: the next one near the end and dropped ones around it.
+     */
+    public void onVisibleRangeChanged(int firstVisible, int lastVisible) {
+        if (firstVisible < 0 || lastVisible < 0) {
+            return;
+        }
+        this.lastVisible = lastVisible;
+        if (!lastPageLoaded && lastVisible + prefetchDistance >= photos.size()) {
+            // stored photos may end with an incomplete page - it has to be completed first
+            loadPage(photos.size() / pageSize);
+        }
+        final int fromPage = Math.max(0, firstVisible - prefetchDistance) / pageSize;
+        final int toPage = Math.min(getPageCount() - 1, (lastVisible + prefetchDistance) / pageSize);
+        final boolean retryIncomplete = SystemClock.uptimeMillis() >= incompletePagesRetryTime;
+        for (int page = fromPage; page <= toPage; page++) {
+            if ((droppedPages.get(page) && (retryIncomplete || !incompletePages.get(page))) || stalePages.get(page)) {
+                loadPage(page);
+            }
+        }
+    }
+
+    /**
+     * Releases photos of pages that are more than {@link #KEPT_PAGES} pages away from the visible range.
+     */
+    public void dropFarPages(int firstVisible, int lastVisible) {
+        if (firstVisible < 0 || lastVisible < 0) {
+            return;
+        }
+        final int firstKeptPage = firstVisible / pageSize - KEPT_PAGES;
+        final int lastKeptPage = lastVisible / pageSize + KEPT_PAGES;
+        final int pageCount = getPageCount();
+        boolean dropped = false;
+        for (int page = 0; page < pageCount; page++) {
+            if ((page < firstKeptPage || page > lastKeptPage) && !droppedPages.get(page) && !loadingPages.get(page)) {
+                final int start = page * pageSize;
+                final int end = Math.min(photos.size(), start + pageSize);
+                for (int i = start; i < end; i++) {
+                    photos.unload(i);
+                }
+                droppedPages.set(page);
+                dropped = true;
+                modificationCount++;
+                if (listener != null) {
+                    listener.onPhotosChanged(start, end - start);
+                }
+            }
+        }
+        if (dropped) {
+            // unloading alone leaves the strings in place
+            photos.trim();
+        }
+    }
+
+    /**
+     * Loads pages from the first one to the one after the visible range again and applies the difference.
+     * Photos beyond them stay as they are, unless the feed got shorter.
+     */
+    public void refresh() {
+        if (photos.size() == 0) {
+            loadPage(0);
+            return;
+        }
+        if (refreshing) {
+            return;
+        }
+        refreshing = true;
+        final int generation = ++refreshGeneration;
+        final int lastPage = (Math.max(0, lastVisible) + prefetchDistance) / pageSize;
+        final int pageCount = Math.max(1, Math.min(getPageCount(), lastPage + 1));
+        final FiveHundredPxService.PhotoPage[] pages = new FiveHundredPxService.PhotoPage[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            final int page = i;
+            service.getPopularPhotos(page + 1, pageSize, new Callback<FiveHundredPxService.PhotoPage>() {
+                @Override
+                public void success(FiveHundredPxService.PhotoPage response, Response r) {
+                    if (generation != refreshGeneration) {
+                        return;
+                    }
+                    pages[page] = response;
+                    for (FiveHundredPxService.PhotoPage loaded : pages) {
+                        if (loaded == null) {
+                            return;
+                        }
+                    }
+                    onRefreshLoaded(generation, pages);
+                }
+
+                @Override
+                public void failure(RetrofitError error) {
+                    if (generation != refreshGeneration) {
+                        return;
+                    }
+                    refreshGeneration++;
+                    refreshing = false;
+                    if (listener != null) {
+                        listener.onPageFailed(page, error);
+                    }
+                }
+            });
+        }
+    }
+
+    private void onRefreshLoaded(final int generation, final FiveHundredPxService.PhotoPage[] pages) {
+        final PhotoColumns refreshed = new PhotoColumns();
+        boolean complete = true;
+        for (FiveHundredPxService.PhotoPage page : pages) {
+            final PhotoColumns loaded = page.photos;
+            refreshed.addAll(loaded, 0, Math.min(pageSize, loaded.size()));
+            if (loaded.size() < pageSize || page.current_page >= page.total_pages) {
+                complete = false;
+                break;
+            }
+        }
+        final int refreshedEnd = Math.min(photos.size(), pages.length * pageSize);
+        if (complete) {
+            // pages are full - the rest of the photos keeps its page alignment
+            refreshed.addAll(photos, refreshedEnd, photos.size());
+        }
+        final boolean lastPage = !complete || lastPageLoaded;
+        final PhotoColumns current = photos.copy();
+        final int expectedModificationCount = modificationCount;
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PhotoListDiff diff = PhotoListDiff.compute(current, refreshed);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != refreshGeneration) {
+                            return;
+                        }
+                        if (expectedModificationCount != modificationCount) {
+                            // a page was loaded or dropped meanwhile - diff against the photos we have now
+                            onRefreshLoaded(generation, pages);
+                            return;
+                        }
+                        applyRefresh(refreshed, pages.length, lastPage, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyRefresh(PhotoColumns refreshed, int refreshedPages, boolean lastPage, PhotoListDiff diff) {
+        refreshing = false;
+        photos.setAll(refreshed);
+        modificationCount++;
+        if (lastPage) {
+            droppedPages.clear(getPageCount(), Math.max(getPageCount(), droppedPages.length()));
+            incompletePages.clear(getPageCount(), Math.max(getPageCount(), incompletePages.length()));
+            stalePages.clear(getPageCount(), Math.max(getPageCount(), stalePages.length()));
+        }
+        droppedPages.clear(0, refreshedPages);
+        incompletePages.clear(0, refreshedPages);
+        stalePages.clear(0, refreshedPages);
+        lastPageLoaded = lastPage;
+        if (listener != null) {
+            diff.dispatchUpdatesTo(new PhotoListDiff.Callback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    listener.onPhotosInserted(position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    listener.onPhotosRemoved(position, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    listener.onPhotoMoved(fromPosition, toPosition);
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                    listener.onPhotosChanged(position, count);
+                }
+            });
+        }
+        if (store != null && !diff.isEmpty()) {
+            // positions may have shifted anywhere - a refresh is rare enough to store everything
+            store.saveAsync(photos);
+        }
+    }
+
+    private int getPageCount() {
+        return (photos.size() + pageSize - 1) / pageSize;
+    }
+
+    private void loadPage(final int page) {
+        if (loadingPages.get(page)) {
+            return;
+        }
+        loadingPages.set(page);
+        service.getPopularPhotos(page + 1, pageSize, new Callback<FiveHundredPxService.PhotoPage>() {
+            @Override
+            public void success(FiveHundredPxService.PhotoPage response, Response r) {
+                loadingPages.clear(page);
+                final int start = page * pageSize;
+                if (droppedPages.get(page) || stalePages.get(page)) {
+                    onPageReloaded(page, response.photos);
+                } else if (page == getPageCount() && !lastPageLoaded) {
+                    onNextPageLoaded(response);
+                } else {
+                    return;
+                }
+                if (store != null) {
+                    // only the page is copied for the store, not the whole feed
+                    store.saveAsync(photos, start, Math.min(photos.size(), start + pageSize));
+                }
+            }
+
+            @Override
+            public void failure(RetrofitError error) {
+                loadingPages.clear(page);
+                if (listener != null) {
+                    listener.onPageFailed(page, error);
+                }
+            }
+        });
+    }
+
+    private void onNextPageLoaded(FiveHundredPxService.PhotoPage response) {
+        final PhotoColumns loaded = response.photos;
+        // a short page means the previous one was the last - the next one would be appended at a wrong position
+        lastPageLoaded = loaded.size() < pageSize || response.current_page >= response.total_pages;
+        if (loaded.size() == 0) {
+            return;
+        }
+        final int start = photos.size();
+        photos.addAll(loaded, 0, Math.min(pageSize, loaded.size()));
+        modificationCount++;
+        if (listener != null) {
+            listener.onPhotosInserted(start, photos.size() - start);
+        }
+    }
+
+    /**
+     * Puts photos of a dropped or stale page back, reporting only the ones that have changed.
+     * Feed may have changed since - slots that are not covered stay as they are,
+     * an incomplete stored page is completed.
+     */
+    private void onPageReloaded(int page, PhotoColumns loaded) {
+        modificationCount++;
+        stalePages.clear(page);
+        final int start = page * pageSize;
+        final int count = Math.min(pageSize, loaded.size());
+        int changedStart = -1;
+        for (int i = 0; i <= count; i++) {
+            final int position = start + i;
+            final boolean changed = i < count && position < photos.size()
+                    && !photos.isSamePhoto(position, loaded, i);
+            if (changed) {
+                photos.set(position, loaded, i);
+                if (changedStart < 0) {
+                    changedStart = position;
+                }
+            } else if (changedStart >= 0) {
+                if (listener != null) {
+                    listener.onPhotosChanged(changedStart, position - changedStart);
+                }
+                changedStart = -1;
+            }
+        }
+        final int inserted = start + count - photos.size();
+        if (inserted > 0) {
+            final int insertStart = photos.size();
+            photos.addAll(loaded, count - inserted, count);
+            if (listener != null) {
+                listener.onPhotosInserted(insertStart, inserted);
+            }
+        }
+        if (start + count >= photos.size() && count < pageSize) {
+            lastPageLoaded = true;
+        }
+        updateDropped(page);
+    }
+
+    /**
+     * A reloaded page stays dropped while any of its slots is not loaded, so it is requested again later.
+     */
+    private void updateDropped(int page) {
+        final int start = page * pageSize;
+        final int end = Math.min(photos.size(), start + pageSize);
+        for (int i = start; i < end; i++) {
+            if (!photos.isLoaded(i)) {
+                incompletePages.set(page);
+                incompletePagesRetryTime = SystemClock.uptimeMillis() + INCOMPLETE_PAGE_RETRY_MS;
+                return;
+            }
+        }
+        droppedPages.clear(page);
+        incompletePages.clear(page);
+    }
+}
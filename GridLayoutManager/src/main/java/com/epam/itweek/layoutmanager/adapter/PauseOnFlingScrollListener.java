@@ -0,0 +1,78 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses image requests with the given tag while RecyclerView flings faster than the threshold.
+ * Cells pass the viewport too fast to be seen at that speed, so their downloads and decodes
+ * would only delay images for the cells the fling stops at.
+ * Requests are resumed once the fling slows down or stops.
+ */
+public class PauseOnFlingScrollListener implements RecyclerView.OnScrollListener {
+
+    private final Picasso picasso;
+
+    private final Object tag;
+
+    /**
+     * Velocity in pixels per second above which requests are paused.
+     */
+    private final int velocityThreshold;
+
+    private int scrollState = RecyclerView.SCROLL_STATE_IDLE;
+
+    private long lastScrollNs;
+
+    private boolean paused;
+
+    public PauseOnFlingScrollListener(Picasso picasso, Object tag, int velocityThreshold) {
+        this.picasso = picasso;
+        this.tag = tag;
+        this.velocityThreshold = velocityThreshold;
+    }
+
+    @Override
+    public void onScrollStateChanged(int newState) {
+        scrollState = newState;
+        if (newState != RecyclerView.SCROLL_STATE_SETTLING) {
+            resume();
+        }
+    }
+
+    @Override
+    public void onScrolled(int dx, int dy) {
+        final long now = System.nanoTime();
+        final long dt = now - lastScrollNs;
+        lastScrollNs = now;
+        if (scrollState != RecyclerView.SCROLL_STATE_SETTLING || dt <= 0) {
+            return;
+        }
+        final float velocity = Math.abs(dy) * (float) TimeUnit.SECONDS.toNanos(1) / dt;
+        if (velocity > velocityThreshold) {
+            pause();
+        } else {
+            resume();
+        }
+    }
+
+    private void pause() {
+        if (!paused) {
+            paused = true;
+            picasso.pauseTag(tag);
+        }
+    }
+
+    /**
+     * Resumes paused requests, e.g. when the screen is destroyed in the middle of a fling.
+     */
+    public void resume() {
+        if (paused) {
+            paused = false;
+            picasso.resumeTag(tag);
+        }
+    }
+}
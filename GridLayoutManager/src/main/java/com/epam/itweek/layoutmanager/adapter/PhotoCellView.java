@@ -0,0 +1,294 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.epam.itweek.layoutmanager.R;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+/**
+ * Grid cell drawn by a single view: placeholder color, photo and pressed state ripple on top.
+ * Replaces a frame with an image and a tap area - one view to measure, lay out and draw per cell
+ * and every pixel is filled once, plus the ripple while it is visible.
+ *
+ * The view is a Picasso {@link Target}, the bitmap is expected to be decoded at the content size -
+ * the view size minus padding - and is drawn as is. A bitmap of another size, such as one loaded before
+ * the cell was resized, is center cropped and scaled. While it is loaded a low resolution preview may stand in for it.
+ */
+public class PhotoCellView extends View implements Target {
+
+    public interface OnSizeReadyListener {
+
+        /**
+         * @param width  content width, see {@link #getContentWidth()}
+         * @param height content height
+         */
+        void onSizeReady(PhotoCellView view, int width, int height);
+    }
+
+    private final Paint placeholderPaint = new Paint();
+
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    private final Rect bitmapSource = new Rect();
+
+    private final Rect contentBounds = new Rect();
+
+    private Bitmap bitmap;
+
+    /**
+     * Bitmap is exactly the content size and is drawn without filtering.
+     */
+    private boolean bitmapFitsContent;
+
+    private Bitmap preview;
+
+    private final Rect previewSource = new Rect();
+
+    private Drawable foreground;
+
+    private OnSizeReadyListener onSizeReadyListener;
+
+    private BitmapPool bitmapPool;
+
+    public PhotoCellView(Context context) {
+        this(context, null);
+    }
+
+    public PhotoCellView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PhotoCellView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        placeholderPaint.setColor(getResources().getColor(R.color.primary));
+        setForegroundDrawable(getResources().getDrawable(R.drawable.ripple_bright));
+        setClickable(true);
+    }
+
+    public void setPlaceholderColor(int color) {
+        placeholderPaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * @param foreground drawable drawn over the photo, usually a ripple reacting to the pressed state
+     */
+    public void setForegroundDrawable(Drawable foreground) {
+        if (this.foreground != null) {
+            this.foreground.setCallback(null);
+        }
+        this.foreground = foreground;
+        if (foreground != null) {
+            foreground.setCallback(this);
+            if (foreground.isStateful()) {
+                foreground.setState(getDrawableState());
+            }
+            foreground.setBounds(0, 0, getWidth(), getHeight());
+        }
+        invalidate();
+    }
+
+    /**
+     * @param pool pool to hold a reference to the drawn bitmap in, so it is not reused while it is on screen
+     */
+    public void setBitmapPool(BitmapPool pool) {
+        bitmapPool = pool;
+    }
+
+    /**
+     * @param bitmap photo to draw or null to show the placeholder
+     */
+    public void setBitmap(Bitmap bitmap) {
+        if (this.bitmap == bitmap) {
+            return;
+        }
+        if (bitmapPool != null) {
+            if (bitmap != null) {
+                bitmapPool.retain(bitmap);
+            }
+            if (this.bitmap != null) {
+                bitmapPool.release(this.bitmap);
+            }
+        }
+        this.bitmap = bitmap;
+        updateBitmapSource();
+        invalidate();
+    }
+
+    /**
+     * Preview is drawn scaled up instead of the placeholder until a bitmap is set. It is not pooled,
+     * so it is not retained either - it is expected to be immutable, see {@link PoolingLruCache#getPreview(String)}.
+     *
+     * @param preview low resolution copy of the photo or null
+     */
+    public void setPreview(Bitmap preview) {
+        if (this.preview == preview) {
+            return;
+        }
+        this.preview = preview;
+        if (preview != null) {
+            centerCrop(preview, previewSource);
+        }
+        if (bitmap == null) {
+            invalidate();
+        }
+    }
+
+    /**
+     * @return width of the area the photo is drawn in, 0 until the view is laid out
+     */
+    public int getContentWidth() {
+        return contentBounds.width();
+    }
+
+    public int getContentHeight() {
+        return contentBounds.height();
+    }
+
+    /**
+     * @param listener notified once, when the view gets a non-empty content size - for requests
+     *                 that cannot be made before the size is known
+     */
+    public void setOnSizeReadyListener(OnSizeReadyListener listener) {
+        onSizeReadyListener = listener;
+    }
+
+    @Override
+    public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+        preview = null;
+        setBitmap(bitmap);
+    }
+
+    @Override
+    public void onBitmapFailed(Drawable errorDrawable) {
+        setBitmap(null);
+    }
+
+    @Override
+    public void onPrepareLoad(Drawable placeHolderDrawable) {
+        // placeholder color is drawn without a drawable
+        setBitmap(null);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        contentBounds.set(getPaddingLeft(), getPaddingTop(), w - getPaddingRight(), h - getPaddingBottom());
+        updateBitmapSource();
+        if (preview != null) {
+            centerCrop(preview, previewSource);
+        }
+        if (foreground != null) {
+            foreground.setBounds(0, 0, w, h);
+        }
+        if (!contentBounds.isEmpty() && onSizeReadyListener != null) {
+            OnSizeReadyListener listener = onSizeReadyListener;
+            onSizeReadyListener = null;
+            listener.onSizeReady(this, contentBounds.width(), contentBounds.height());
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (bitmap != null) {
+            if (bitmap.hasAlpha()) {
+                canvas.drawRect(contentBounds, placeholderPaint);
+            }
+            if (bitmapFitsContent) {
+                canvas.drawBitmap(bitmap, contentBounds.left, contentBounds.top, null);
+            } else {
+                canvas.drawBitmap(bitmap, bitmapSource, contentBounds, bitmapPaint);
+            }
+        } else {
+            if (preview == null || preview.hasAlpha()) {
+                canvas.drawRect(contentBounds, placeholderPaint);
+            }
+            if (preview != null) {
+                canvas.drawBitmap(preview, previewSource, contentBounds, bitmapPaint);
+            }
+        }
+        if (foreground != null) {
+            foreground.draw(canvas);
+        }
+    }
+
+    /**
+     * Lets the framework skip drawing whatever is behind the cell.
+     */
+    @Override
+    public boolean isOpaque() {
+        return getPaddingLeft() == 0 && getPaddingTop() == 0 && getPaddingRight() == 0 && getPaddingBottom() == 0;
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == foreground || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (foreground != null && foreground.isStateful()) {
+            foreground.setState(getDrawableState());
+        }
+    }
+
+    @Override
+    public void drawableHotspotChanged(float x, float y) {
+        super.drawableHotspotChanged(x, y);
+        if (foreground != null) {
+            foreground.setHotspot(x, y);
+        }
+    }
+
+    @Override
+    public void jumpDrawablesToCurrentState() {
+        super.jumpDrawablesToCurrentState();
+        if (foreground != null) {
+            foreground.jumpToCurrentState();
+        }
+    }
+
+    /**
+     * Center crop: the largest part of the bitmap with the aspect ratio of the content bounds.
+     */
+    private void updateBitmapSource() {
+        bitmapFitsContent = bitmap != null
+                && bitmap.getWidth() == contentBounds.width() && bitmap.getHeight() == contentBounds.height();
+        if (bitmap != null) {
+            centerCrop(bitmap, bitmapSource);
+        }
+    }
+
+    private void centerCrop(Bitmap bitmap, Rect bitmapSource) {
+        final int bitmapWidth = bitmap.getWidth();
+        final int bitmapHeight = bitmap.getHeight();
+        final int width = contentBounds.width();
+        final int height = contentBounds.height();
+        if (width <= 0 || height <= 0 || (long) bitmapWidth * height == (long) bitmapHeight * width) {
+            bitmapSource.set(0, 0, bitmapWidth, bitmapHeight);
+        } else if ((long) bitmapWidth * height > (long) bitmapHeight * width) {
+            final int croppedWidth = (int) ((long) bitmapHeight * width / height);
+            final int left = (bitmapWidth - croppedWidth) / 2;
+            bitmapSource.set(left, 0, left + croppedWidth, bitmapHeight);
+        } else {
+            final int croppedHeight = (int) ((long) bitmapWidth * height / width);
+            final int top = (bitmapHeight - croppedHeight) / 2;
+            bitmapSource.set(0, top, bitmapWidth, top + croppedHeight);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Photo metadata stored column by column: primitive arrays for numbers and {@link TextColumn}s for strings.
+ * A feed of thousands of photos takes a handful of arrays instead of several objects per photo,
+ * and reading a photo for binding does not touch anything but the needed columns.
+ *
+ * A photo is not loaded if it has no image url, e.g. its page was dropped to save memory.
+ * Not thread safe - a page is filled on a background thread and handed over to the main thread.
+ */
+public final class PhotoColumns {
+
+    private int size;
+
+    private int[] ids = new int[0];
+
+    private int[] widths = new int[0];
+
+    private int[] heights = new int[0];
+
+    private final TextColumn imageUrls = new TextColumn();
+
+    private final TextColumn names = new TextColumn();
+
+    private final TextColumn userNames = new TextColumn();
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isLoaded(int position) {
+        return !imageUrls.isNull(position);
+    }
+
+    public int getId(int position) {
+        return ids[position];
+    }
+
+    public int getWidth(int position) {
+        return widths[position];
+    }
+
+    public int getHeight(int position) {
+        return heights[position];
+    }
+
+    /**
+     * @return width to height ratio of the original photo or 1 if dimensions are unknown
+     */
+    public float getAspectRatio(int position) {
+        final int width = widths[position];
+        final int height = heights[position];
+        if (width <= 0 || height <= 0) {
+            return 1f;
+        }
+        return width / (float) height;
+    }
+
+    public String getImageUrl(int position) {
+        return imageUrls.get(position);
+    }
+
+    public String getName(int position) {
+        return names.get(position);
+    }
+
+    public String getUserName(int position) {
+        return userNames.get(position);
+    }
+
+    public void add(int id, int width, int height, String imageUrl, String name, String userName) {
+        ensureCapacity(size + 1);
+        ids[size] = id;
+        widths[size] = width;
+        heights[size] = height;
+        imageUrls.add(imageUrl);
+        names.add(name);
+        userNames.add(userName);
+        size++;
+    }
+
+    /**
+     * Appends a photo with strings given as UTF-8 ranges of the buffer, length -1 stands for null.
+     * Strings are copied without being decoded. The position of the buffer is changed.
+     *
+     * @throws IllegalArgumentException if a range is out of the buffer
+     */
+    void add(int id, int width, int height, ByteBuffer strings, int imageUrlOffset, int imageUrlLength,
+             int nameOffset, int nameLength, int userNameOffset, int userNameLength) {
+        ensureCapacity(size + 1);
+        ids[size] = id;
+        widths[size] = width;
+        heights[size] = height;
+        imageUrls.add(strings, imageUrlOffset, imageUrlLength);
+        names.add(strings, nameOffset, nameLength);
+        userNames.add(strings, userNameOffset, userNameLength);
+        size++;
+    }
+
+    /**
+     * @return number of UTF-8 bytes of all strings of the photo
+     */
+    int getStringByteCount(int position) {
+        return imageUrls.getByteLength(position) + names.getByteLength(position) + userNames.getByteLength(position);
+    }
+
+    /**
+     * Appends photos {@code [from, to)} of another store.
+     */
+    public void addAll(PhotoColumns source, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ensureCapacity(size + 1);
+            imageUrls.add(null);
+            names.add(null);
+            userNames.add(null);
+            size++;
+            set(size - 1, source, i);
+        }
+    }
+
+    /**
+     * Replaces the photo at the position with a photo of another store.
+     */
+    public void set(int position, PhotoColumns source, int sourcePosition) {
+        ids[position] = source.ids[sourcePosition];
+        widths[position] = source.widths[sourcePosition];
+        heights[position] = source.heights[sourcePosition];
+        imageUrls.set(position, source.imageUrls, sourcePosition);
+        names.set(position, source.names, sourcePosition);
+        userNames.set(position, source.userNames, sourcePosition);
+    }
+
+    /**
+     * Releases strings of the photo keeping its position, the photo is not loaded after that.
+     */
+    public void unload(int position) {
+        imageUrls.set(position, null);
+        names.set(position, null);
+        userNames.set(position, null);
+    }
+
+    /**
+     * Releases memory of unloaded and removed strings if it outweighs memory of loaded ones.
+     * Compaction copies loaded strings, so it is meant to be called once after a batch of unloads.
+     */
+    public void trim() {
+        imageUrls.trim();
+        names.trim();
+        userNames.trim();
+    }
+
+    /**
+     * Removes photos from the given size to the end.
+     */
+    public void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        size = newSize;
+        imageUrls.truncate(newSize);
+        names.truncate(newSize);
+        userNames.truncate(newSize);
+    }
+
+    /**
+     * @return true if both positions show the same image of the same photo
+     */
+    public boolean isSamePhoto(int position, PhotoColumns other, int otherPosition) {
+        return ids[position] == other.ids[otherPosition]
+                && imageUrls.equals(position, other.imageUrls, otherPosition);
+    }
+
+    /**
+     * @return true if all metadata of both positions is equal
+     */
+    public boolean isIdentical(int position, PhotoColumns other, int otherPosition) {
+        return isSamePhoto(position, other, otherPosition)
+                && widths[position] == other.widths[otherPosition]
+                && heights[position] == other.heights[otherPosition]
+                && names.equals(position, other.names, otherPosition)
+                && userNames.equals(position, other.userNames, otherPosition);
+    }
+
+    /**
+     * Replaces all photos with photos of another store.
+     */
+    public void setAll(PhotoColumns source) {
+        size = 0;
+        imageUrls.clear();
+        names.clear();
+        userNames.clear();
+        addAll(source, 0, source.size());
+    }
+
+    public PhotoColumns copy() {
+        PhotoColumns copy = new PhotoColumns();
+        copy.addAll(this, 0, size);
+        return copy;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (ids.length >= capacity) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, ids.length * 3 / 2 + 16);
+        ids = Arrays.copyOf(ids, newCapacity);
+        widths = Arrays.copyOf(widths, newCapacity);
+        heights = Arrays.copyOf(heights, newCapacity);
+    }
+}
@@ -0,0 +1,337 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two photo lists as a sequence of range updates an adapter can be notified with,
+ * so that a refreshed feed keeps scroll position and only rebinds cells that have actually changed.
+ *
+ * Photos are matched by id with Myers' algorithm; photos removed at one place and inserted at another
+ * are reported as moves. Matched photos with different metadata are reported as changed.
+ * Computing is O((N + M) * D) and meant for a background thread, dispatching is cheap.
+ */
+public final class PhotoListDiff {
+
+    public interface Callback {
+
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position, int count);
+    }
+
+    /**
+     * Lists further apart than this are reported as removed and inserted entirely,
+     * which keeps memory used by the edit trace within a megabyte.
+     */
+    private static final int MAX_EDIT_DISTANCE = 512;
+
+    private static final int NO_MATCH = -1;
+
+    private static final int INSERT = 0;
+
+    private static final int REMOVE = 1;
+
+    private static final int MOVE = 2;
+
+    private static final int CHANGE = 3;
+
+    /**
+     * Updates in the order they have to be dispatched: type and two arguments each.
+     */
+    private int[] updates = new int[0];
+
+    private int updateCount;
+
+    private PhotoListDiff() {
+    }
+
+    public static PhotoListDiff compute(PhotoColumns oldPhotos, PhotoColumns newPhotos) {
+        final int oldSize = oldPhotos.size();
+        final int newSize = newPhotos.size();
+        final int[] oldToNew = new int[oldSize];
+        final int[] newToOld = new int[newSize];
+        Arrays.fill(oldToNew, NO_MATCH);
+        Arrays.fill(newToOld, NO_MATCH);
+
+        PhotoListDiff diff = new PhotoListDiff();
+        if (!match(oldPhotos, newPhotos, oldToNew, newToOld)) {
+            diff.add(REMOVE, 0, oldSize);
+            diff.add(INSERT, 0, newSize);
+            return diff;
+        }
+        final boolean[] moved = new boolean[oldSize];
+        detectMoves(oldPhotos, newPhotos, oldToNew, newToOld, moved);
+
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (oldToNew[i] != NO_MATCH) {
+                continue;
+            }
+            int start = i;
+            while (start > 0 && oldToNew[start - 1] == NO_MATCH) {
+                start--;
+            }
+            // nothing before this range was touched yet - positions are the old ones
+            diff.add(REMOVE, start, i - start + 1);
+            i = start;
+        }
+        diff.addMoves(oldToNew, newToOld, moved);
+        // everything left is in new list order now
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] != NO_MATCH) {
+                continue;
+            }
+            int end = j;
+            while (end + 1 < newSize && newToOld[end + 1] == NO_MATCH) {
+                end++;
+            }
+            diff.add(INSERT, j, end - j + 1);
+            j = end;
+        }
+        for (int j = 0; j < newSize; j++) {
+            if (!isChanged(oldPhotos, newPhotos, newToOld, j)) {
+                continue;
+            }
+            int end = j;
+            while (end + 1 < newSize && isChanged(oldPhotos, newPhotos, newToOld, end + 1)) {
+                end++;
+            }
+            diff.add(CHANGE, j, end - j + 1);
+            j = end;
+        }
+        return diff;
+    }
+
+    /**
+     * Reports updates in the order they have to be applied, after the data set is replaced with the new list.
+     */
+    public void dispatchUpdatesTo(Callback callback) {
+        for (int i = 0; i < updateCount; i++) {
+            final int first = updates[i * 3 + 1];
+            final int second = updates[i * 3 + 2];
+            switch (updates[i * 3]) {
+                case INSERT:
+                    callback.onInserted(first, second);
+                    break;
+                case REMOVE:
+                    callback.onRemoved(first, second);
+                    break;
+                case MOVE:
+                    callback.onMoved(first, second);
+                    break;
+                case CHANGE:
+                    callback.onChanged(first, second);
+                    break;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return updateCount == 0;
+    }
+
+    /**
+     * Moved photos are put right after their predecessor in the new list, in new list order.
+     *
+     * A photo that stays in place is followed by the chain of moved photos put after it, so the final order is
+     * known up front: every photo gets a slot of its own and every moved photo a second slot in the chain
+     * of the last photo that stays before it. Positions of the moment are ranks of occupied slots,
+     * kept in a Fenwick tree - a move costs O(log N) instead of a search through the list.
+     */
+    private void addMoves(int[] oldToNew, int[] newToOld, boolean[] moved) {
+        final int oldSize = oldToNew.length;
+        // chain of the photo that stays at i is chainCounts[i + 1], photos moved before all others are in [0]
+        final int[] anchors = new int[oldSize];
+        final int[] chainCounts = new int[oldSize + 1];
+        int moveCount = 0;
+        int lastStaying = NO_MATCH;
+        for (int oldPosition : newToOld) {
+            if (oldPosition == NO_MATCH) {
+                continue;
+            }
+            if (moved[oldPosition]) {
+                anchors[oldPosition] = lastStaying;
+                chainCounts[lastStaying + 1]++;
+                moveCount++;
+            } else {
+                lastStaying = oldPosition;
+            }
+        }
+        if (moveCount == 0) {
+            return;
+        }
+        final int[] slots = new int[oldSize];
+        final int[] nextChainSlots = new int[oldSize + 1];
+        int slotCount = 0;
+        nextChainSlots[0] = slotCount;
+        slotCount += chainCounts[0];
+        for (int i = 0; i < oldSize; i++) {
+            slots[i] = slotCount++;
+            nextChainSlots[i + 1] = slotCount;
+            slotCount += chainCounts[i + 1];
+        }
+        final int[] occupied = new int[slotCount + 1];
+        for (int i = 0; i < oldSize; i++) {
+            if (oldToNew[i] != NO_MATCH) {
+                addToTree(occupied, slots[i], 1);
+            }
+        }
+        int predecessor = NO_MATCH;
+        for (int oldPosition : newToOld) {
+            if (oldPosition == NO_MATCH) {
+                continue;
+            }
+            if (moved[oldPosition]) {
+                final int from = sumOfTree(occupied, slots[oldPosition]);
+                final int predecessorPosition = predecessor == NO_MATCH ? -1 : sumOfTree(occupied, slots[predecessor]);
+                final int to = from > predecessorPosition ? predecessorPosition + 1 : predecessorPosition;
+                addToTree(occupied, slots[oldPosition], -1);
+                slots[oldPosition] = nextChainSlots[anchors[oldPosition] + 1]++;
+                addToTree(occupied, slots[oldPosition], 1);
+                if (from != to) {
+                    add(MOVE, from, to);
+                }
+            }
+            predecessor = oldPosition;
+        }
+    }
+
+    private void add(int type, int first, int second) {
+        if (type != MOVE && second == 0) {
+            return;
+        }
+        if (updates.length < (updateCount + 1) * 3) {
+            updates = Arrays.copyOf(updates, updates.length * 2 + 3 * 8);
+        }
+        updates[updateCount * 3] = type;
+        updates[updateCount * 3 + 1] = first;
+        updates[updateCount * 3 + 2] = second;
+        updateCount++;
+    }
+
+    /**
+     * Finds the longest common subsequence of ids with Myers' greedy algorithm.
+     *
+     * @return false if lists are more than {@link #MAX_EDIT_DISTANCE} edits apart
+     */
+    private static boolean match(PhotoColumns oldPhotos, PhotoColumns newPhotos, int[] oldToNew, int[] newToOld) {
+        final int oldSize = oldPhotos.size();
+        final int newSize = newPhotos.size();
+        final int maxDistance = Math.min(oldSize + newSize, MAX_EDIT_DISTANCE);
+        final int offset = maxDistance + 1;
+        // furthest old position reached on every diagonal k = x - y
+        final int[] v = new int[2 * maxDistance + 3];
+        // v before every step, only diagonals the step reads from
+        final List<int[]> trace = new ArrayList<int[]>();
+        int distance = -1;
+        for (int d = 0; d <= maxDistance && distance < 0; d++) {
+            trace.add(d == 0 ? new int[0] : Arrays.copyOfRange(v, offset - d + 1, offset + d));
+            for (int k = -d; k <= d; k += 2) {
+                final boolean down = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]);
+                int x = down ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < oldSize && y < newSize && oldPhotos.getId(x) == newPhotos.getId(y)) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= oldSize && y >= newSize) {
+                    distance = d;
+                    break;
+                }
+            }
+        }
+        if (distance < 0) {
+            return false;
+        }
+        int x = oldSize;
+        int y = newSize;
+        for (int d = distance; d > 0; d--) {
+            final int[] previous = trace.get(d);
+            final int k = x - y;
+            final boolean down = k == -d
+                    || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+            final int previousK = down ? k + 1 : k - 1;
+            final int previousX = previous[previousK + d - 1];
+            final int snakeStartX = down ? previousX : previousX + 1;
+            while (x > snakeStartX) {
+                x--;
+                y--;
+                oldToNew[x] = y;
+                newToOld[y] = x;
+            }
+            x = previousX;
+            y = previousX - previousK;
+        }
+        while (x > 0) {
+            x--;
+            y--;
+            oldToNew[x] = y;
+            newToOld[y] = x;
+        }
+        return true;
+    }
+
+    /**
+     * Pairs removed and inserted photos with the same id.
+     */
+    private static void detectMoves(PhotoColumns oldPhotos, PhotoColumns newPhotos, int[] oldToNew, int[] newToOld,
+                                    boolean[] moved) {
+        final Map<Integer, LinkedList<Integer>> inserted = new HashMap<Integer, LinkedList<Integer>>();
+        for (int j = 0; j < newToOld.length; j++) {
+            if (newToOld[j] == NO_MATCH) {
+                LinkedList<Integer> positions = inserted.get(newPhotos.getId(j));
+                if (positions == null) {
+                    positions = new LinkedList<Integer>();
+                    inserted.put(newPhotos.getId(j), positions);
+                }
+                positions.add(j);
+            }
+        }
+        if (inserted.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < oldToNew.length; i++) {
+            if (oldToNew[i] != NO_MATCH) {
+                continue;
+            }
+            final LinkedList<Integer> positions = inserted.get(oldPhotos.getId(i));
+            if (positions != null && !positions.isEmpty()) {
+                final int j = positions.removeFirst();
+                oldToNew[i] = j;
+                newToOld[j] = i;
+                moved[i] = true;
+            }
+        }
+    }
+
+    private static void addToTree(int[] tree, int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return sum of values at indices before the given one
+     */
+    private static int sumOfTree(int[] tree, int end) {
+        int sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private static boolean isChanged(PhotoColumns oldPhotos, PhotoColumns newPhotos, int[] newToOld, int position) {
+        final int oldPosition = newToOld[position];
+        return oldPosition != NO_MATCH && !oldPhotos.isIdentical(oldPosition, newPhotos, position);
+    }
+}
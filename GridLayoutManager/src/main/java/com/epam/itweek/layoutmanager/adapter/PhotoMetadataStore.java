@@ -0,0 +1,307 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Disk cache of photo metadata in a compact binary format, so that a cold start can show the grid
+ * without waiting for the network.
+ *
+ * Metadata is kept in two files:
+ *  - index - header followed by fixed size records: id, width, height and offset and length of every string;
+ *  - strings - UTF-8 bytes of urls and names, appended one after another.
+ *
+ * On load both files are memory-mapped and strings are copied as they are, without decoding.
+ * Updates only rewrite records of changed photos in place and append their strings;
+ * strings of replaced records become garbage that is compacted away by a full rewrite
+ * once it takes more than half of the strings file. Records are positional - a photo that is not loaded
+ * gets a record without strings, so records after it keep their positions.
+ * Reads and writes happen on a background thread.
+ */
+public class PhotoMetadataStore {
+
+    public interface LoadCallback {
+
+        /**
+         * Called on the main thread.
+         *
+         * @param photos stored photos or no photos if there are none or files are damaged
+         */
+        void onLoaded(PhotoColumns photos);
+    }
+
+    private static final String TAG = PhotoMetadataStore.class.getSimpleName();
+
+    private static final int MAGIC = 0x35303050; // "500P"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 3 * 4;
+
+    /**
+     * id, width, height, offset and length of url, name and user name.
+     */
+    private static final int RECORD_SIZE = 9 * 4;
+
+    private static final int NULL_STRING = -1;
+
+    /**
+     * Garbage in the strings file that is tolerated regardless of the number of live bytes.
+     */
+    private static final int MIN_COMPACTION_GARBAGE = 16 * 1024;
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PhotoMetadataStore");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final File indexFile;
+
+    private final File stringsFile;
+
+    /**
+     * Photos as they are stored on disk, accessed on the write thread only after {@link #load()}.
+     */
+    private PhotoColumns persisted = new PhotoColumns();
+
+    /**
+     * Number of bytes of the strings file referenced by records.
+     */
+    private long liveStringBytes;
+
+    public PhotoMetadataStore(File directory) {
+        this.indexFile = new File(directory, "photos.idx");
+        this.stringsFile = new File(directory, "photos.str");
+    }
+
+    /**
+     * Reads stored photos in background and delivers them on the main thread.
+     * Meant to be called once on startup, saves issued after it are written after the load.
+     */
+    public void loadAsync(final LoadCallback callback) {
+        WRITE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PhotoColumns photos = load();
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(photos);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads stored photos on the calling thread, prefer {@link #loadAsync(LoadCallback)} on the main thread.
+     * Meant to be called once on startup, before any {@link #saveAsync(PhotoColumns)}.
+     *
+     * @return stored photos or no photos if there are none or files are damaged
+     */
+    public synchronized PhotoColumns load() {
+        persisted = new PhotoColumns();
+        liveStringBytes = 0;
+        if (!indexFile.exists() || !stringsFile.exists()) {
+            return new PhotoColumns();
+        }
+        PhotoColumns photos = new PhotoColumns();
+        try {
+            ByteBuffer index = map(indexFile);
+            ByteBuffer strings = map(stringsFile);
+            if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+                return new PhotoColumns();
+            }
+            final int count = index.getInt(8);
+            if (count < 0 || HEADER_SIZE + (long) count * RECORD_SIZE > index.capacity()) {
+                return new PhotoColumns();
+            }
+            for (int i = 0; i < count; i++) {
+                int offset = HEADER_SIZE + i * RECORD_SIZE;
+                photos.add(index.getInt(offset), index.getInt(offset + 4), index.getInt(offset + 8), strings,
+                        index.getInt(offset + 12), index.getInt(offset + 16),
+                        index.getInt(offset + 20), index.getInt(offset + 24),
+                        index.getInt(offset + 28), index.getInt(offset + 32));
+                liveStringBytes += photos.getStringByteCount(i);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "failed to read photo metadata", e);
+            liveStringBytes = 0;
+            return new PhotoColumns();
+        } catch (RuntimeException e) {
+            // any garbage in the files surfaces as a buffer or argument exception - start over
+            Log.w(TAG, "photo metadata is damaged", e);
+            liveStringBytes = 0;
+            return new PhotoColumns();
+        }
+        // the caller owns the returned photos, the store keeps its own copy for diffing writes
+        persisted = photos.copy();
+        return photos;
+    }
+
+    /**
+     * Stores all photos in background, writing only the ones that differ from stored ones.
+     *
+     * @param photos photos to store, photos that are not loaded keep stored photos at their positions
+     */
+    public void saveAsync(PhotoColumns photos) {
+        saveAsync(photos, 0, photos.size());
+    }
+
+    /**
+     * Stores photos {@code [from, to)} in background, writing only the ones that differ from stored ones.
+     * Only the range is copied on the calling thread, so saving a page costs the same however long the feed is.
+     * Stored photos beyond the size of the list are dropped.
+     *
+     * @param photos photos to store, photos that are not loaded keep stored photos at their positions
+     */
+    public void saveAsync(PhotoColumns photos, final int from, int to) {
+        final PhotoColumns snapshot = new PhotoColumns();
+        snapshot.addAll(photos, from, to);
+        final int size = photos.size();
+        WRITE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save(snapshot, from, size);
+                } catch (IOException e) {
+                    Log.w(TAG, "failed to write photo metadata", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param photos photos to store at positions starting from {@code from}
+     * @param size   number of photos in the whole list
+     */
+    private synchronized void save(PhotoColumns photos, int from, int size) throws IOException {
+        RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+        RandomAccessFile strings = new RandomAccessFile(stringsFile, "rw");
+        try {
+            if (persisted.size() == 0 || strings.length() - liveStringBytes > liveStringBytes + MIN_COMPACTION_GARBAGE) {
+                // nothing is stored or too much garbage - write stored photos from scratch
+                rewrite(index, strings);
+            }
+            if (size < persisted.size()) {
+                // the list got shorter
+                for (int i = size; i < persisted.size(); i++) {
+                    liveStringBytes -= persisted.getStringByteCount(i);
+                }
+                persisted.truncate(size);
+            }
+            int count = persisted.size();
+            if (from > count) {
+                // positions before the range were never stored - keep them as records without strings
+                for (int position = count; position < from; position++) {
+                    persisted.add(0, 0, 0, null, null, null);
+                    writeRecord(index, strings, position, persisted, position);
+                }
+                count = from;
+            }
+            for (int i = 0; i < photos.size(); i++) {
+                final int position = from + i;
+                if (!photos.isLoaded(i) && position < count) {
+                    // keep the stored photo, an unloaded one beyond them is stored without strings
+                    continue;
+                }
+                if (position < count && persisted.isIdentical(position, photos, i)) {
+                    continue;
+                }
+                writeRecord(index, strings, position, photos, i);
+                if (position < count) {
+                    liveStringBytes -= persisted.getStringByteCount(position);
+                    persisted.set(position, photos, i);
+                } else {
+                    persisted.addAll(photos, i, i + 1);
+                    count++;
+                }
+                liveStringBytes += photos.getStringByteCount(i);
+            }
+            index.seek(8);
+            index.writeInt(count);
+        } finally {
+            index.close();
+            strings.close();
+        }
+    }
+
+    /**
+     * Writes all stored photos to empty files, dropping garbage strings.
+     */
+    private void rewrite(RandomAccessFile index, RandomAccessFile strings) throws IOException {
+        index.setLength(0);
+        strings.setLength(0);
+        index.writeInt(MAGIC);
+        index.writeInt(VERSION);
+        index.writeInt(persisted.size());
+        liveStringBytes = 0;
+        for (int i = 0; i < persisted.size(); i++) {
+            writeRecord(index, strings, i, persisted, i);
+            liveStringBytes += persisted.getStringByteCount(i);
+        }
+    }
+
+    /**
+     * @param position       position of the record in the index
+     * @param sourcePosition position of the photo in the given photos
+     */
+    private static void writeRecord(RandomAccessFile index, RandomAccessFile strings, int position,
+                                    PhotoColumns photos, int sourcePosition) throws IOException {
+        index.seek(HEADER_SIZE + (long) position * RECORD_SIZE);
+        index.writeInt(photos.getId(sourcePosition));
+        index.writeInt(photos.getWidth(sourcePosition));
+        index.writeInt(photos.getHeight(sourcePosition));
+        writeString(index, strings, photos.getImageUrl(sourcePosition));
+        writeString(index, strings, photos.getName(sourcePosition));
+        writeString(index, strings, photos.getUserName(sourcePosition));
+    }
+
+    /**
+     * Appends the string to the strings file and writes its offset and length to the index.
+     */
+    private static void writeString(RandomAccessFile index, RandomAccessFile strings, String value) throws IOException {
+        if (value == null) {
+            index.writeInt(0);
+            index.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(CHARSET);
+        long offset = strings.length();
+        strings.seek(offset);
+        strings.write(bytes);
+        index.writeInt((int) offset);
+        index.writeInt(bytes.length);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.converter.GsonConverter;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Reads {@link FiveHundredPxService.PhotoPage} token by token straight into {@link PhotoColumns}:
+ * no {@code Photo} and {@code User} objects per item and no strings for fields we do not show.
+ * Everything else goes through Gson as usual.
+ */
+public class PhotoPageConverter implements Converter {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final GsonConverter fallback = new GsonConverter(new Gson());
+
+    @Override
+    public Object fromBody(TypedInput body, Type type) throws ConversionException {
+        if (type != FiveHundredPxService.PhotoPage.class) {
+            return fallback.fromBody(body, type);
+        }
+        JsonReader reader = null;
+        try {
+            reader = new JsonReader(new InputStreamReader(body.in(), CHARSET));
+            return readPage(reader);
+        } catch (IOException e) {
+            throw new ConversionException(e);
+        } catch (IllegalStateException e) {
+            // thrown by JsonReader when the response is not what we expect
+            throw new ConversionException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public TypedOutput toBody(Object object) {
+        return fallback.toBody(object);
+    }
+
+    private static FiveHundredPxService.PhotoPage readPage(JsonReader reader) throws IOException {
+        FiveHundredPxService.PhotoPage page = new FiveHundredPxService.PhotoPage();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("current_page".equals(name)) {
+                page.current_page = readInt(reader);
+            } else if ("total_pages".equals(name)) {
+                page.total_pages = readInt(reader);
+            } else if ("photos".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readPhoto(reader, page.photos);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    private static void readPhoto(JsonReader reader, PhotoColumns photos) throws IOException {
+        int id = 0;
+        int width = 0;
+        int height = 0;
+        String imageUrl = null;
+        String title = null;
+        String userName = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                id = readInt(reader);
+            } else if ("width".equals(name)) {
+                width = readInt(reader);
+            } else if ("height".equals(name)) {
+                height = readInt(reader);
+            } else if ("image_url".equals(name)) {
+                imageUrl = readString(reader);
+            } else if ("name".equals(name)) {
+                title = readString(reader);
+            } else if ("user".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                userName = readUserName(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        photos.add(id, width, height, imageUrl, title, userName);
+    }
+
+    private static String readUserName(JsonReader reader) throws IOException {
+        String userName = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("fullname".equals(reader.nextName())) {
+                userName = readString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return userName;
+    }
+
+    private static int readInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextInt();
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,253 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used memory cache that holds a {@link BitmapPool} reference to every bitmap it keeps,
+ * so evicted bitmaps are reused for new decodes as soon as no cell shows them.
+ *
+ * Bitmaps evicted by a mild trim leave a preview behind: a copy downscaled {@link #PREVIEW_SCALE} times
+ * in both dimensions, kept in a small tier of its own. Previews survive trims short of
+ * {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} and are shown in place of the placeholder while the full image
+ * is loaded again. Ordinary evictions on {@link #set(String, Bitmap)} leave no preview - scrolling evicts
+ * all the time and must not allocate a scaled copy for every image it pushes out.
+ *
+ * The cache shrinks in stages as memory gets tight, see {@link #trimMemory(int)}, and its capacity can be
+ * tuned to the working set of the screen with {@link #setMaxSize(int)}.
+ * Hit, miss, put and eviction counts and sizes of both tiers are kept for reporting.
+ */
+public class PoolingLruCache implements Cache {
+
+    private static final int PREVIEW_SCALE = 4;
+
+    /**
+     * Preview tier takes this share of the cache size - enough for a preview of every image the cache can hold.
+     */
+    private static final int PREVIEW_SHARE = PREVIEW_SCALE * PREVIEW_SCALE;
+
+    private final LinkedHashMap<String, Bitmap> map = new LinkedHashMap<String, Bitmap>(0, 0.75f, true);
+
+    /**
+     * Previews by stable key, the part of the cache key before the first line break.
+     */
+    private final LinkedHashMap<String, Bitmap> previews = new LinkedHashMap<String, Bitmap>(0, 0.75f, true);
+
+    private final BitmapPool pool;
+
+    private int maxSize;
+
+    private int size;
+
+    private int previewSize;
+
+    private int hitCount;
+
+    private int missCount;
+
+    private int putCount;
+
+    private int evictionCount;
+
+    private int previewHitCount;
+
+    /**
+     * @param maxSize bytes of pixels the cache keeps at most
+     */
+    public PoolingLruCache(int maxSize, BitmapPool pool) {
+        this.maxSize = maxSize;
+        this.pool = pool;
+    }
+
+    @Override
+    public synchronized Bitmap get(String key) {
+        final Bitmap bitmap = map.get(key);
+        if (bitmap != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return bitmap;
+    }
+
+    @Override
+    public synchronized void set(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            throw new NullPointerException("key == null || bitmap == null");
+        }
+        putCount++;
+        pool.retain(bitmap);
+        size += bitmap.getAllocationByteCount();
+        final Bitmap previous = map.put(key, bitmap);
+        if (previous != null) {
+            // replaced, not evicted - no preview
+            size -= previous.getAllocationByteCount();
+            pool.release(previous);
+        }
+        trimToSize(maxSize, false);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Evicts everything including previews, e.g. on {@link android.content.ComponentCallbacks#onLowMemory()}.
+     */
+    @Override
+    public synchronized void clear() {
+        trimToSize(-1, false);
+        trimPreviewsToSize(-1);
+    }
+
+    /**
+     * Changes capacity, e.g. to fit the working set of the screen. Shrinking evicts right away and leaves
+     * no previews - it is called on the main thread while the grid is drawn, where scaling copies would show.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trimToSize(maxSize, false);
+        trimPreviewsToSize(maxSize / PREVIEW_SHARE);
+    }
+
+    /**
+     * Shrinks the cache according to a level passed to {@link ComponentCallbacks2#onTrimMemory(int)}:
+     * by a quarter while the app runs and memory is getting low, down to a half when it is low and a quarter
+     * when it is critical, to a half when the UI goes away and a quarter in background.
+     * From {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} on everything goes, previews included.
+     *
+     * Previews of evicted bitmaps are created only at the mild levels,
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE} and {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN} -
+     * a scaled copy is an allocation, which must not happen when memory is really tight.
+     * Capacity stays the same - the cache grows back as images are loaded again.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimToSize(maxSize / 4, false);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimToSize(maxSize / 2, true);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(maxSize / 4, false);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize / 2, false);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            trimToSize(maxSize * 3 / 4, true);
+        }
+    }
+
+    /**
+     * Previews are created with {@link Bitmap#createScaledBitmap(Bitmap, int, int, boolean)} and are immutable,
+     * so they are never pooled and need no references.
+     *
+     * @param stableKey stable key of the image, e.g. {@link FiveHundredPxRecyclerAdapter#cacheKey}
+     * @return downscaled copy of an evicted image or null
+     */
+    public synchronized Bitmap getPreview(String stableKey) {
+        final Bitmap preview = previews.get(stableKey);
+        if (preview != null) {
+            previewHitCount++;
+        }
+        return preview;
+    }
+
+    public synchronized int getPreviewSize() {
+        return previewSize;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return share of lookups that were hits or 0 if there were none
+     */
+    public synchronized float getHitRate() {
+        final int lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : hitCount / (float) lookups;
+    }
+
+    public synchronized int getPutCount() {
+        return putCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int getPreviewHitCount() {
+        return previewHitCount;
+    }
+
+    public synchronized void resetStats() {
+        hitCount = 0;
+        missCount = 0;
+        putCount = 0;
+        evictionCount = 0;
+        previewHitCount = 0;
+    }
+
+    /**
+     * Evicts least recently used bitmaps until the cache takes at most the given number of bytes.
+     *
+     * @param keepPreviews true to leave previews of evicted bitmaps, which allocates a scaled copy of each
+     */
+    private void trimToSize(int maxSize, boolean keepPreviews) {
+        final Iterator<Map.Entry<String, Bitmap>> iterator = map.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Bitmap> entry = iterator.next();
+            final Bitmap bitmap = entry.getValue();
+            iterator.remove();
+            size -= bitmap.getAllocationByteCount();
+            evictionCount++;
+            if (keepPreviews) {
+                putPreview(entry.getKey(), bitmap);
+            }
+            pool.release(bitmap);
+        }
+    }
+
+    private void putPreview(String key, Bitmap bitmap) {
+        final int previewMaxSize = maxSize / PREVIEW_SHARE;
+        final int width = Math.max(1, bitmap.getWidth() / PREVIEW_SCALE);
+        final int height = Math.max(1, bitmap.getHeight() / PREVIEW_SCALE);
+        // preview keeps the format of the bitmap
+        if (bitmap.isRecycled() || bitmap.getAllocationByteCount() / PREVIEW_SHARE > previewMaxSize) {
+            return;
+        }
+        final int end = key.indexOf('\n');
+        final String stableKey = end < 0 ? key : key.substring(0, end);
+        final Bitmap preview = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        previewSize += preview.getAllocationByteCount();
+        final Bitmap previous = previews.put(stableKey, preview);
+        if (previous != null) {
+            previewSize -= previous.getAllocationByteCount();
+        }
+        trimPreviewsToSize(previewMaxSize);
+    }
+
+    private void trimPreviewsToSize(int maxSize) {
+        final Iterator<Bitmap> iterator = previews.values().iterator();
+        while (previewSize > maxSize && iterator.hasNext()) {
+            previewSize -= iterator.next().getAllocationByteCount();
+            iterator.remove();
+        }
+    }
+}
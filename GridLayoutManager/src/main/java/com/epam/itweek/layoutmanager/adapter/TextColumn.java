@@ -0,0 +1,207 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Column of strings kept as UTF-8 ranges of a single byte array - a couple of ints per value
+ * instead of a {@link String} object with its own char array. Values are decoded on access.
+ *
+ * Replaced values leave their bytes behind; the array is compacted once garbage outweighs live bytes
+ * while growing, or on {@link #trim()} - compaction sizes the array to live bytes plus some headroom.
+ */
+final class TextColumn {
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int MIN_HEADROOM = 256;
+
+    private byte[] bytes = new byte[0];
+
+    private int usedBytes;
+
+    private int liveBytes;
+
+    private int[] offsets = new int[0];
+
+    private int[] lengths = new int[0];
+
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+        usedBytes = 0;
+        liveBytes = 0;
+    }
+
+    void truncate(int newSize) {
+        for (int i = newSize; i < size; i++) {
+            liveBytes -= Math.max(0, lengths[i]);
+        }
+        size = Math.min(size, newSize);
+    }
+
+    void add(String value) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 3 / 2 + 16);
+            lengths = Arrays.copyOf(lengths, offsets.length);
+        }
+        lengths[size] = NULL_LENGTH;
+        size++;
+        set(size - 1, value);
+    }
+
+    void set(int index, String value) {
+        release(index);
+        if (value == null) {
+            return;
+        }
+        byte[] encoded = encode(value);
+        ensureBytes(encoded.length);
+        System.arraycopy(encoded, 0, bytes, usedBytes, encoded.length);
+        offsets[index] = usedBytes;
+        lengths[index] = encoded.length;
+        usedBytes += encoded.length;
+        liveBytes += encoded.length;
+    }
+
+    /**
+     * Copies the value from another column without decoding it.
+     */
+    void set(int index, TextColumn source, int sourceIndex) {
+        release(index);
+        final int length = source.lengths[sourceIndex];
+        if (length == NULL_LENGTH) {
+            return;
+        }
+        ensureBytes(length);
+        System.arraycopy(source.bytes, source.offsets[sourceIndex], bytes, usedBytes, length);
+        offsets[index] = usedBytes;
+        lengths[index] = length;
+        usedBytes += length;
+        liveBytes += length;
+    }
+
+    /**
+     * Appends a value as UTF-8 bytes read from the buffer, without decoding it.
+     *
+     * @param length number of bytes or -1 for null
+     */
+    void add(ByteBuffer source, int offset, int length) {
+        add(null);
+        if (length == NULL_LENGTH) {
+            return;
+        }
+        if (length < 0 || offset < 0 || offset > source.limit() - length) {
+            throw new IllegalArgumentException("range " + offset + "+" + length + " is out of the buffer");
+        }
+        ensureBytes(length);
+        source.position(offset);
+        source.get(bytes, usedBytes, length);
+        offsets[size - 1] = usedBytes;
+        lengths[size - 1] = length;
+        usedBytes += length;
+        liveBytes += length;
+    }
+
+    /**
+     * @return number of UTF-8 bytes of the value, 0 for null
+     */
+    int getByteLength(int index) {
+        return Math.max(0, lengths[index]);
+    }
+
+    /**
+     * Releases garbage and spare capacity if they outweigh live bytes, e.g. after values were unloaded.
+     */
+    void trim() {
+        if (bytes.length - liveBytes > liveBytes + MIN_HEADROOM) {
+            compact(withHeadroom(liveBytes));
+        }
+    }
+
+    boolean isNull(int index) {
+        return lengths[index] == NULL_LENGTH;
+    }
+
+    String get(int index) {
+        final int length = lengths[index];
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        try {
+            return new String(bytes, offsets[index], length, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    boolean equals(int index, TextColumn other, int otherIndex) {
+        final int length = lengths[index];
+        if (length != other.lengths[otherIndex]) {
+            return false;
+        }
+        final int offset = offsets[index];
+        final int otherOffset = other.offsets[otherIndex];
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != other.bytes[otherOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turns the value into null before a new one is written, so that compaction does not keep the old bytes.
+     */
+    private void release(int index) {
+        liveBytes -= Math.max(0, lengths[index]);
+        offsets[index] = 0;
+        lengths[index] = NULL_LENGTH;
+    }
+
+    private void ensureBytes(int length) {
+        if (usedBytes + length <= bytes.length) {
+            return;
+        }
+        if (usedBytes - liveBytes > liveBytes) {
+            compact(withHeadroom(liveBytes + length));
+            return;
+        }
+        bytes = Arrays.copyOf(bytes, Math.max(usedBytes + length, bytes.length * 3 / 2 + MIN_HEADROOM));
+    }
+
+    private void compact(int capacity) {
+        byte[] compacted = new byte[capacity];
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            final int length = lengths[i];
+            if (length > 0) {
+                System.arraycopy(bytes, offsets[i], compacted, used, length);
+                offsets[i] = used;
+                used += length;
+            }
+        }
+        bytes = compacted;
+        usedBytes = used;
+    }
+
+    private static int withHeadroom(int length) {
+        return length + length / 4 + MIN_HEADROOM;
+    }
+
+    private static byte[] encode(String value) {
+        try {
+            return value.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
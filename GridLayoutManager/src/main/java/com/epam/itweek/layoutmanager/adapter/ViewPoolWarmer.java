@@ -0,0 +1,117 @@
+package com.epam.itweek.layoutmanager.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates view holders ahead of time and puts them into a {@link RecyclerView.RecycledViewPool},
+ * so that inflation is paid for before it is needed, e.g. while a reveal animation is running,
+ * instead of inside scroll frames.
+ *
+ * Holders are created on the main thread - item views carry thread affine state such as ripples and themed
+ * drawables. Work is done in {@link MessageQueue.IdleHandler#queueIdle()}, i.e. when the main thread has
+ * nothing else to do, in batches limited by {@link #BATCH_BUDGET_NS}, so input and frames wait
+ * for one short batch at most.
+ *
+ * The pool can be shared between RecyclerViews whose adapters use the same view types and holders.
+ */
+public class ViewPoolWarmer {
+
+    /**
+     * Time a batch may take, a quarter of a frame.
+     */
+    private static final long BATCH_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final RecyclerView.RecycledViewPool pool;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Incremented on cancel, warm ups started before are stopped.
+     */
+    private int generation;
+
+    public ViewPoolWarmer(RecyclerView.RecycledViewPool pool) {
+        this.pool = pool;
+    }
+
+    public RecyclerView.RecycledViewPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Creates holders while the main thread is idle and adds them to the pool.
+     * Pool capacity for the view type is raised to the count, otherwise extra holders would be dropped.
+     * Must be called on the main thread.
+     *
+     * @param parent view the holders are created for, it is only used to generate layout params
+     * @param count  number of holders to create
+     */
+    public void warmUp(RecyclerView.Adapter<?> adapter, ViewGroup parent, int viewType, int count) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("view holders are created on the main thread");
+        }
+        if (count <= 0) {
+            return;
+        }
+        pool.setMaxRecycledViews(viewType, count);
+        Looper.myQueue().addIdleHandler(new WarmUpTask(adapter, parent, viewType, count));
+    }
+
+    /**
+     * Stops creating holders, e.g. when the screen goes away. Holders already in the pool stay there.
+     */
+    public void cancel() {
+        generation++;
+    }
+
+    private class WarmUpTask implements MessageQueue.IdleHandler, Runnable {
+
+        private final RecyclerView.Adapter<?> adapter;
+
+        private final ViewGroup parent;
+
+        private final int viewType;
+
+        private final int expectedGeneration = generation;
+
+        private int remaining;
+
+        WarmUpTask(RecyclerView.Adapter<?> adapter, ViewGroup parent, int viewType, int count) {
+            this.adapter = adapter;
+            this.parent = parent;
+            this.viewType = viewType;
+            remaining = count;
+        }
+
+        @Override
+        public boolean queueIdle() {
+            if (expectedGeneration != generation) {
+                return false;
+            }
+            final long start = System.nanoTime();
+            do {
+                pool.putRecycledView(adapter.createViewHolder(parent, viewType));
+                remaining--;
+            } while (remaining > 0 && System.nanoTime() - start < BATCH_BUDGET_NS);
+            if (remaining > 0) {
+                // an idle handler kept registered only runs when the queue goes idle again, the message
+                // lets pending input and frames through and brings the next batch right after them
+                mainHandler.post(this);
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (expectedGeneration == generation) {
+                Looper.myQueue().addIdleHandler(this);
+            }
+        }
+    }
+}